@@ -0,0 +1,210 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * class: BatchRunner
+ * Runs many PyScript programs at once. Each script gets its own
+ * ScriptContext, with its input read from a file and its output
+ * collected in memory, and runs on its own virtual thread so the
+ * batch spreads over every core.
+ *
+ * Usage: java BatchRunner [--timeout ms] [--max-memory bytes] <script directory | manifest file> [output directory]
+ * A directory runs every .txt file in it, using name.in as the input
+ * for name.txt when it exists. A manifest lists one script per line,
+ * optionally followed by its input file, relative to the manifest.
+ * Scripts listed more than once are only compiled once, and scripts with
+ * an up to date .pysc file next to them are not compiled at all.
+ * With --timeout, any script still running after that many milliseconds
+ * is stopped and reported as failed, and with --max-memory so is any script
+ * whose variables grow past that many bytes.
+ */
+public class BatchRunner {
+    private static final ScriptCache cache = new ScriptCache(1024);
+
+    /**
+     * class: Job
+     * A script to run and the file its input is read from (null for no input)
+     */
+    public static class Job {
+        public final File script;
+        public final File input;
+
+        public Job(File script, File input) {
+            this.script = script;
+            this.input = input;
+        }
+    }
+
+    /**
+     * class: Result
+     * What a single script did: its output, exit status (0 when it ran
+     * to the end, 1 when it failed), the error if it failed and how long it took.
+     */
+    public static class Result {
+        public final Job job;
+        public final String output;
+        public final int status;
+        public final String error;
+        public final long nanos;
+
+        public Result(Job job, String output, int status, String error, long nanos) {
+            this.job = job;
+            this.output = output;
+            this.status = status;
+            this.error = error;
+            this.nanos = nanos;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> positional = new ArrayList<>();
+        long timeout = 0;
+        long maxMemory = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--timeout")) timeout = Long.parseLong(args[++i]);
+            else if (args[i].equals("--max-memory")) maxMemory = Long.parseLong(args[++i]);
+            else positional.add(args[i]);
+        }
+        if (positional.isEmpty()) {
+            System.err.println("Usage: java BatchRunner [--timeout ms] [--max-memory bytes] <script directory | manifest file> [output directory]");
+            System.exit(2);
+        }
+        File source = new File(positional.get(0));
+        List<Job> jobs = source.isDirectory() ? jobsFromDirectory(source) : jobsFromManifest(source);
+        File outputDir = (positional.size() > 1) ? new File(positional.get(1)) : null;
+        if (outputDir != null) {
+            outputDir.mkdirs();
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = runAll(jobs, timeout, maxMemory);
+        long wall = System.nanoTime() - start;
+
+        long busy = 0;
+        int failed = 0;
+        for (Result result : results) {
+            busy += result.nanos;
+            if (result.status != 0) failed++;
+            System.out.printf("%-40s %d %10.3f ms%s%n", result.job.script.getName(), result.status,
+                    result.nanos / 1e6, (result.error == null) ? "" : "  " + result.error);
+            if (outputDir != null) {
+                try (FileWriter writer = new FileWriter(new File(outputDir, result.job.script.getName() + ".out"))) {
+                    writer.write(result.output);
+                }
+            }
+        }
+        System.out.printf("%d scripts, %d failed, %.3f ms wall, %.3f ms total script time%n",
+                results.size(), failed, wall / 1e6, busy / 1e6);
+        System.out.println(cache);
+        if (failed > 0) System.exit(1);
+    }
+
+    /**
+     * Method: jobsFromDirectory - makes a job for every .txt script in a directory
+     * @param dir - the directory holding the scripts
+     * @return jobs - one job per script, sorted by name
+     */
+    public static List<Job> jobsFromDirectory(File dir) {
+        List<Job> jobs = new ArrayList<>();
+        File[] scripts = dir.listFiles((d, name) -> name.endsWith(".txt"));
+        if (scripts == null) return jobs;
+        Arrays.sort(scripts);
+        for (File script : scripts) {
+            String name = script.getName();
+            File input = new File(dir, name.substring(0, name.length() - 4) + ".in");
+            jobs.add(new Job(script, input.exists() ? input : null));
+        }
+        return jobs;
+    }
+
+    /**
+     * Method: jobsFromManifest - reads jobs from a manifest file, where each line is
+     *         "script [input]". Blank lines and lines starting with # are skipped.
+     * @param manifest - the manifest file
+     * @return jobs - one job per manifest entry
+     * @throws IOException - if the manifest cannot be read
+     */
+    public static List<Job> jobsFromManifest(File manifest) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        File base = manifest.getAbsoluteFile().getParentFile();
+        for (String line : ScriptRunner.readLines(manifest.getPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            File input = (parts.length > 1) ? new File(base, parts[1]) : null;
+            jobs.add(new Job(new File(base, parts[0]), input));
+        }
+        return jobs;
+    }
+
+    /**
+     * Method: runAll - runs every job concurrently, one virtual thread per job
+     * @param jobs - the scripts to run
+     * @param timeout - milliseconds each script may run for, 0 for no limit
+     * @param maxMemory - estimated bytes each script's variables may hold, 0 for no limit
+     * @return results - one result per job, in the same order as the jobs
+     */
+    public static List<Result> runAll(List<Job> jobs, long timeout, long maxMemory) {
+        List<Result> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(executor.submit(() -> run(job, timeout, maxMemory)));
+            }
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch job failed unexpectedly", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Method: run - runs a single job in a context of its own
+     * @param job - the script to run
+     * @param timeout - milliseconds the script may run for, 0 for no limit
+     * @param maxMemory - estimated bytes the script's variables may hold, 0 for no limit
+     * @return result - the output, status and timing of the script
+     */
+    public static Result run(Job job, long timeout, long maxMemory) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        int status = 0;
+        String error = null;
+        try {
+            String input = (job.input == null) ? "" : Files.readString(job.input.toPath());
+            // scripts precompiled with PrecompiledScript skip the Tokenizer even on a cold cache
+            ScriptProgram program = PrecompiledScript.compiledFile(job.script).exists()
+                    ? PrecompiledScript.loadOrCompile(job.script)
+                    : cache.get(ScriptRunner.readLines(job.script.getPath()));
+            ScriptContext context = new ScriptContext(new Scanner(input), output);
+            context.setLimits(0, 0, timeout);
+            context.setMemoryLimits(0, 0, maxMemory);
+            program.execute(context);
+        } catch (Exception | Error e) {
+            // an Error, such as a StackOverflowError, fails this job alone and not the batch
+            status = 1;
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        long nanos = System.nanoTime() - start;
+        output.flush();
+        return new Result(job, buffer.toString(StandardCharsets.UTF_8), status, error, nanos);
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+/**
+ * class: Benchmarks
+ * Performance harness for the lexer, parser and executor. Each benchmark is
+ * warmed up first and then timed over several fixed length iterations, and
+ * the result of every call is folded into a sink so the JIT cannot drop it.
+ * Runs the sample programs (with scripted input for the ones that read it)
+ * and synthetic programs sized by loop count and line count.
+ *
+ * Usage: java Benchmarks [-w warmup ms] [-m iteration ms] [-i iterations] [name regex]
+ * For example "java Benchmarks execute" only runs the execution benchmarks.
+ */
+public class Benchmarks {
+    // sample program and the input it reads
+    private static final String[][] SAMPLES = {
+            {"Program1.txt", "12\n18\n"},
+            {"leapyear.txt", "2000\n1900\n2024\n0\n"},
+            {"loop_lines.txt", ""},
+            {"num_lines.txt", ""}
+    };
+    private static final int[] LOOP_COUNTS = {10, 100, 1000};
+    private static final int[] SCRIPT_SIZES = {100, 1000};
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+    private static volatile long sink;
+
+    private long warmupMillis = 1000;
+    private long measureMillis = 1000;
+    private int iterations = 5;
+    private Pattern filter = Pattern.compile("");
+
+    /**
+     * interface: Task
+     * A single call of the code being measured
+     */
+    public interface Task {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Benchmarks benchmarks = new Benchmarks();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-w" -> benchmarks.warmupMillis = Long.parseLong(args[++i]);
+                case "-m" -> benchmarks.measureMillis = Long.parseLong(args[++i]);
+                case "-i" -> benchmarks.iterations = Integer.parseInt(args[++i]);
+                default -> benchmarks.filter = Pattern.compile(args[i]);
+            }
+        }
+        benchmarks.runAll();
+    }
+
+    /**
+     * Method: runAll - runs every benchmark whose name matches the filter
+     * @throws IOException - if a sample program cannot be read
+     */
+    public void runAll() throws IOException {
+        System.out.printf("%-36s %14s %12s %14s%n", "Benchmark", "us/op", "error", "ops/s");
+        for (String[] sample : SAMPLES) {
+            List<String> lines = ScriptRunner.readLines("./src/" + sample[0]);
+            runFrontEnd(sample[0], lines);
+            runExecute(sample[0], lines, sample[1]);
+        }
+        for (int loops : LOOP_COUNTS) {
+            runExecute("loop=" + loops, loopScript(loops), "");
+            runExecute("for=" + loops, forScript(loops), "");
+            runExecute("call=" + loops, callScript(loops), "");
+            runExecute("array=" + loops, arrayScript(loops), "");
+        }
+        for (int size : SCRIPT_SIZES) {
+            List<String> lines = straightLineScript(size);
+            runFrontEnd("lines=" + size, lines);
+            runExecute("lines=" + size, lines, "");
+        }
+    }
+
+    /**
+     * Method: runFrontEnd - benchmarks tokenizing, bracket checking and validating a program
+     * @param name - name of the program in the report
+     * @param lines - every line of the program
+     */
+    private void runFrontEnd(String name, List<String> lines) {
+        measure("tokenize/" + name, () -> {
+            Tokenizer tokenizer = new Tokenizer();
+            int count = 0;
+            for (String line : lines) {
+                count += tokenizer.tokenize(line).size();
+            }
+            return count;
+        });
+        measure("checkBrackets/" + name, () -> {
+            new Tokenizer().checkBrackets(lines);
+            return lines;
+        });
+        measure("compileLazy/" + name, () -> ScriptProgram.compileLazy(lines));
+        ScriptProgram program = ScriptProgram.compile(lines);
+        measure("parse/" + name, () -> {
+            program.validate();
+            return program;
+        });
+    }
+
+    /**
+     * Method: runExecute - benchmarks running an already compiled program
+     * @param name - name of the program in the report
+     * @param lines - every line of the program
+     * @param input - what the program reads from the console
+     */
+    private void runExecute(String name, List<String> lines, String input) {
+        ScriptProgram program = ScriptProgram.compile(lines);
+        InputRecording replay = input.isEmpty() ? InputRecording.of() : InputRecording.of(input.split("\n"));
+        measure("execute/" + name, () -> {
+            ScriptContext context = new ScriptContext(new Scanner(""), NO_OUTPUT);
+            context.setReplay(replay);
+            return program.execute(context);
+        });
+    }
+
+    public Benchmarks() {
+    }
+
+    /**
+     * Constructor: sets how long each benchmark is run for
+     * @param warmupMillis - how long to run before timing
+     * @param measureMillis - how long each timed iteration is
+     * @param iterations - how many timed iterations there are
+     */
+    public Benchmarks(long warmupMillis, long measureMillis, int iterations) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Method: measure - warms up and times a benchmark, then prints its line of the report
+     * @param name - name of the benchmark
+     * @param task - the code to measure
+     * @return the mean nanoseconds per call, or NaN if the benchmark was filtered out or failed
+     */
+    public double measure(String name, Task task) {
+        if (!filter.matcher(name).find()) return Double.NaN;
+        try {
+            runFor(task, warmupMillis);
+            double[] nanosPerOp = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                nanosPerOp[i] = runFor(task, measureMillis);
+            }
+            double mean = 0;
+            for (double value : nanosPerOp) mean += value;
+            mean /= iterations;
+            double variance = 0;
+            for (double value : nanosPerOp) variance += (value - mean) * (value - mean);
+            double error = (iterations > 1) ? Math.sqrt(variance / (iterations - 1)) : 0;
+            System.out.printf("%-36s %14.3f %12.3f %14.1f%n", name, mean / 1e3, error / 1e3, 1e9 / mean);
+            return mean;
+        } catch (Exception e) {
+            System.out.printf("%-36s failed: %s%n", name, e);
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Method: runFor - calls a task repeatedly for a length of time
+     * @param task - the code to measure
+     * @param millis - how long to keep calling it
+     * @return the average nanoseconds per call
+     * @throws Exception - anything the task throws
+     */
+    private static double runFor(Task task, long millis) throws Exception {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        long start = System.nanoTime();
+        long ops = 0;
+        long now;
+        do {
+            sink += System.identityHashCode(task.run());
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return (double) (now - start) / ops;
+    }
+
+    /**
+     * Method: loopScript - a program that sums a counter in a while loop
+     * @param loops - how many times the loop runs
+     * @return lines - the program
+     */
+    public static List<String> loopScript(int loops) {
+        List<String> lines = new ArrayList<>();
+        lines.add("let i = 0");
+        lines.add("let sum = 0");
+        lines.add("while(i<" + loops + "){");
+        lines.add("    sum = sum + i * 2");
+        lines.add("    i = i + 1");
+        lines.add("}");
+        lines.add("puts(sum)");
+        return lines;
+    }
+
+    /**
+     * Method: forScript - the same program as loopScript, written with a for loop
+     * @param loops - how many times the loop runs
+     * @return lines - the program
+     */
+    public static List<String> forScript(int loops) {
+        List<String> lines = new ArrayList<>();
+        lines.add("let sum = 0");
+        lines.add("for i in range(0, " + loops + "){");
+        lines.add("    sum = sum + i * 2");
+        lines.add("}");
+        lines.add("puts(sum)");
+        return lines;
+    }
+
+    /**
+     * Method: callScript - a loop calling an inlined function and one run as statements
+     * @param loops - how many times the loop runs
+     * @return lines - the program
+     */
+    public static List<String> callScript(int loops) {
+        List<String> lines = new ArrayList<>();
+        lines.add("def twice(x) {");
+        lines.add("    return x * 2");
+        lines.add("}");
+        lines.add("def clamp(x) {");
+        lines.add("    if (x > 100) {");
+        lines.add("        return 100");
+        lines.add("    }");
+        lines.add("    return x");
+        lines.add("}");
+        lines.add("let sum = 0");
+        lines.add("for i in range(0, " + loops + "){");
+        lines.add("    sum = sum + twice(i) + clamp(i)");
+        lines.add("}");
+        lines.add("puts(sum)");
+        return lines;
+    }
+
+    /**
+     * Method: arrayScript - a program that fills an array and then sums it
+     * @param loops - how many elements the array gets
+     * @return lines - the program
+     */
+    public static List<String> arrayScript(int loops) {
+        List<String> lines = new ArrayList<>();
+        lines.add("let a = []");
+        lines.add("for i in range(0, " + loops + "){");
+        lines.add("    append(a, i * 2)");
+        lines.add("}");
+        lines.add("let sum = 0");
+        lines.add("for i in range(0, len(a)){");
+        lines.add("    sum = sum + a[i]");
+        lines.add("}");
+        lines.add("puts(sum)");
+        return lines;
+    }
+
+    /**
+     * Method: straightLineScript - a program of declarations with no blocks
+     * @param size - how many lines long the program is
+     * @return lines - the program
+     */
+    public static List<String> straightLineScript(int size) {
+        List<String> lines = new ArrayList<>();
+        lines.add("let v0 = 1");
+        for (int i = 1; i < size; i++) {
+            lines.add("let v" + i + " = (v" + (i - 1) + " + " + i + ") % 1000");
+        }
+        return lines;
+    }
+}
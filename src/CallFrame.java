@@ -0,0 +1,81 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * class: CallFrame
+ * The variables of one function call. Frames are pooled by ScriptContext,
+ * one per call depth, and reused by every call made at that depth: the
+ * varData maps of the parameters, the map of locals and the Grammar2 that
+ * parses the block are all kept between calls, so a call allocates nothing
+ * for its frame once the pool is warm.
+ */
+public class CallFrame {
+    final HashMap<String, HashMap<String, Object>> locals = new HashMap<>();
+    private final ArrayList<HashMap<String, Object>> slots = new ArrayList<>();
+    private Grammar2 grammar;
+    private int grammarDepth;
+    final Return signal = new Return();
+
+    /**
+     * class: Return
+     * Thrown by a return statement and caught by the call that owns the frame.
+     * It has no stack trace, which makes throwing it about as cheap as a method
+     * return, and each frame throws its own preallocated one. The returned
+     * value is transient, as script values are not meant to be serialized.
+     */
+    static class Return extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        transient Object value;
+
+        Return() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Method: bind - sets a parameter, reusing the varData map of its slot
+     * @param index - position of the parameter
+     * @param name - name of the parameter
+     * @param value - the argument
+     * @param type - "int", "bool" or "string"
+     * @param context - the run the parameter is charged to
+     */
+    void bind(int index, String name, Object value, String type, ScriptContext context) {
+        context.chargeVariable(null, value, true);
+        while (slots.size() <= index) slots.add(new HashMap<>());
+        HashMap<String, Object> varData = slots.get(index);
+        varData.put("val", value);
+        varData.put("type", type);
+        locals.put(name, varData);
+    }
+
+    /**
+     * Method: grammar - the Grammar2 that parses the block of the function, working
+     *         directly on the frame's locals
+     * @param context - the run the call belongs to
+     * @param depth - how many blocks the lines of the function are inside of
+     * @return the frame's Grammar2
+     */
+    Grammar2 grammar(ScriptContext context, int depth) {
+        if (grammar == null || grammarDepth != depth) {
+            grammar = new Grammar2(context, depth);
+            grammarDepth = depth;
+        }
+        grammar.globalVariables = locals;
+        return grammar;
+    }
+
+    /**
+     * Method: clear - releases the locals once the call is over, ready for the next call
+     * @param context - the run the locals were charged to
+     */
+    void clear(ScriptContext context) {
+        for (HashMap<String, Object> varData : locals.values()) {
+            context.releaseVariable(varData.get("val"));
+        }
+        locals.clear();
+        signal.value = null;
+        if (grammar != null) grammar.reset();
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * class: Channel
+ * A bounded first in, first out queue that spawned blocks and the script
+ * that spawned them use to hand values to each other. send waits while the
+ * channel is full and receive waits while it is empty. A channel carries one
+ * type of value, fixed by the first value sent. Arrays are copied when sent,
+ * so the sender and receiver never share one.
+ */
+public class Channel {
+    private static final long WAIT_MILLIS = 10; // how often a waiting send or receive checks for cancellation
+    private final ArrayBlockingQueue<Object> queue;
+    private final int capacity;
+    private volatile String type;
+
+    public Channel(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Channel capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Method: send - adds a value, waiting while the channel is full
+     * @param value - the value to send
+     * @param type - "int", "bool", "string" or "array"
+     * @param context - the run that is sending, checked for cancellation while waiting
+     * @throws IllegalArgumentException - if the value is not the type of the channel
+     */
+    public void send(Object value, String type, ScriptContext context) {
+        synchronized (this) {
+            if (this.type == null) {
+                this.type = type;
+            } else if (!this.type.equals(type)) {
+                throw new IllegalArgumentException("Cannot send a " + type + " on a channel of " + this.type);
+            }
+        }
+        if (value instanceof IntArray array) {
+            value = IntArray.of(array.toArray());
+        }
+        try {
+            while (!queue.offer(value, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                context.checkWaiting();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptTerminatedException("Script cancelled");
+        }
+    }
+
+    /**
+     * Method: receive - takes the oldest value, waiting while the channel is empty
+     * @param context - the run that is receiving, checked for cancellation while waiting
+     * @return the value
+     */
+    public Object receive(ScriptContext context) {
+        try {
+            Object value;
+            while ((value = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                context.checkWaiting();
+            }
+            return value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptTerminatedException("Script cancelled");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "channel(" + capacity + ")";
+    }
+}
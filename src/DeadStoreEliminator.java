@@ -0,0 +1,511 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * class: DeadStoreEliminator
+ * Finds assignments whose value is never read: variables that are never
+ * used, or that are assigned again before the next read. The lines of a
+ * program are grouped back into their blocks, and liveness is worked out
+ * backwards through them. An if-elif-else chain joins what each branch
+ * needs, a while or for loop is gone around until what it needs stops
+ * growing, a spawned block needs what it reads from the variables it is
+ * given, and a function, which only sees its own parameters and locals, is
+ * worked out on its own.
+ *
+ * An assignment that is not needed is removed only if its right side has
+ * no effect other than its value. Reading input, receiving from a channel,
+ * creating a channel, calling a function, indexing an array, taking a
+ * length, and dividing by anything but a non zero literal are all kept, so
+ * nothing is read, no output is lost and no error that depends on the data
+ * goes unreported. Nor is an assignment removed unless every variable its
+ * right side reads is sure to have the type the expression needs there,
+ * since a variable of the wrong type, or one that was never set, stops the
+ * program. Those types are worked out forwards through the same blocks,
+ * keeping only what every path into a line agrees on.
+ * A variable read only by removed assignments is not needed either, so
+ * whole chains of unused values go at once.
+ *
+ * Variables are taken to be unused once the program ends. Programs whose
+ * shape is not recognised, such as a block closed on the same line as
+ * another starts, are left as they are.
+ */
+public class DeadStoreEliminator {
+    private final List<? extends List<Tokenizer.Token>> tokenLines;
+    private final boolean[] removed;
+    private final List<Map<String, String>> typesBefore;
+    private int next = 0;
+
+    private interface Node {
+    }
+
+    /**
+     * class: Statement
+     * A line that neither opens nor closes a block
+     */
+    private record Statement(int line) implements Node {
+    }
+
+    /**
+     * class: Block
+     * A header line, the nodes of its block and, implicitly, the closing brace after them
+     */
+    private record Block(int header, List<Node> body) implements Node {
+    }
+
+    /**
+     * class: Chain
+     * An if block followed by its elif and else blocks
+     */
+    private record Chain(List<Block> branches) implements Node {
+    }
+
+    private DeadStoreEliminator(List<? extends List<Tokenizer.Token>> tokenLines) {
+        this.tokenLines = tokenLines;
+        this.removed = new boolean[tokenLines.size()];
+        this.typesBefore = new ArrayList<>(tokenLines.size());
+        for (int i = 0; i < tokenLines.size(); i++) {
+            typesBefore.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Method: eliminate - the lines of a program without its dead assignments
+     * @param tokenLines - the tokens of every line of a program that follows the grammar
+     * @return the lines that are kept, or null if nothing can be removed
+     */
+    public static List<List<Tokenizer.Token>> eliminate(List<? extends List<Tokenizer.Token>> tokenLines) {
+        DeadStoreEliminator eliminator = new DeadStoreEliminator(tokenLines);
+        List<Node> program = eliminator.parseBlock(false);
+        if (program == null) return null;
+        eliminator.types(program, new HashMap<>());
+        eliminator.live(program, new HashSet<>());
+
+        List<List<Tokenizer.Token>> kept = new ArrayList<>(tokenLines.size());
+        for (int i = 0; i < tokenLines.size(); i++) {
+            if (!eliminator.removed[i]) kept.add(tokenLines.get(i));
+        }
+        return (kept.size() == tokenLines.size()) ? null : kept;
+    }
+
+    /**
+     * Method: parseBlock - groups lines into nodes up to the brace that closes the block
+     * @param nested - whether the lines are inside a block, which the brace closes
+     * @return the nodes, or null if the lines are not in a shape this class handles
+     */
+    private List<Node> parseBlock(boolean nested) {
+        List<Node> nodes = new ArrayList<>();
+        while (next < tokenLines.size()) {
+            List<Tokenizer.Token> tokens = tokenLines.get(next);
+            Tokenizer.Type first = tokens.getFirst().type;
+            if (first == Tokenizer.Type.BRACE_CLOSE) {
+                return (nested && tokens.size() == 2) ? nodes : null;
+            }
+            if (!opensBlock(tokens)) {
+                if (braces(tokens) != 0) return null;
+                nodes.add(new Statement(next++));
+                continue;
+            }
+            if (braces(tokens) != 1) return null;
+            int header = next++;
+            List<Node> body = parseBlock(true);
+            if (body == null) return null;
+            next++; // closing brace
+            Block block = new Block(header, body);
+            if (first == Tokenizer.Type.ELIF || first == Tokenizer.Type.ELSE) {
+                if (nodes.isEmpty() || !(nodes.getLast() instanceof Chain chain) || tokenLines.get(
+                        chain.branches().getLast().header()).getFirst().type == Tokenizer.Type.ELSE) {
+                    return null;
+                }
+                chain.branches().add(block);
+            } else if (first == Tokenizer.Type.IF) {
+                List<Block> branches = new ArrayList<>();
+                branches.add(block);
+                nodes.add(new Chain(branches));
+            } else {
+                nodes.add(block);
+            }
+        }
+        return nested ? null : nodes;
+    }
+
+    /**
+     * Method: types - works out the types variables are sure to have as some nodes run,
+     *         recording them for every line
+     * @param nodes - nodes that run one after another
+     * @param in - types known before the first node, or null if it cannot be reached
+     * @return types known after the last node, or null if it cannot be left normally
+     */
+    private Map<String, String> types(List<Node> nodes, Map<String, String> in) {
+        Map<String, String> types = in;
+        for (Node node : nodes) {
+            types = types(node, types);
+        }
+        return types;
+    }
+
+    /**
+     * Method: types - works out the types variables are sure to have after one node runs
+     * @param node - a statement, block or chain
+     * @param in - types known before the node, or null if it cannot be reached
+     * @return types known after the node, or null if it cannot be left normally
+     */
+    private Map<String, String> types(Node node, Map<String, String> in) {
+        if (node instanceof Statement statement) {
+            List<Tokenizer.Token> tokens = tokenLines.get(statement.line());
+            if (in == null) return null;
+            typesBefore.set(statement.line(), in);
+            if (tokens.getFirst().type == Tokenizer.Type.RETURN) return null;
+            int valueStart = valueStart(tokens);
+            if (valueStart < 0) return in;
+            Map<String, String> out = new HashMap<>(in);
+            String type = typeOf(tokens, valueStart, in);
+            if (type == null) {
+                out.remove(tokens.get(valueStart - 2).lexeme);
+            } else {
+                out.put(tokens.get(valueStart - 2).lexeme, type);
+            }
+            return out;
+        }
+        if (node instanceof Chain chain) {
+            Map<String, String> out = null;
+            boolean hasElse = false;
+            for (Block branch : chain.branches()) {
+                out = meet(out, types(branch.body(), in));
+                if (tokenLines.get(branch.header()).getFirst().type == Tokenizer.Type.ELSE) hasElse = true;
+            }
+            return hasElse ? out : meet(out, in);
+        }
+        Block block = (Block) node;
+        List<Tokenizer.Token> header = tokenLines.get(block.header());
+        switch (header.getFirst().type) {
+            case DEF -> {
+                // nothing is known about the parameters, and the caller's variables are not seen
+                types(block.body(), new HashMap<>());
+                return in;
+            }
+            case SPAWN -> {
+                types(block.body(), in);
+                return in;
+            }
+            default -> {
+                // the top of a loop is reached from before it and from the end of each time around
+                if (in == null) return null;
+                String counter = (header.getFirst().type == Tokenizer.Type.FOR) ? header.get(1).lexeme : null;
+                Map<String, String> top = in;
+                while (true) {
+                    Map<String, String> entry = top;
+                    if (counter != null) {
+                        entry = new HashMap<>(top);
+                        entry.put(counter, "int");
+                    }
+                    Map<String, String> around = meet(top, types(block.body(), entry));
+                    if (around.equals(top)) return top;
+                    top = around;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method: meet - the types two paths into the same place agree on
+     * @param first - types known on one path, or null if it cannot be taken
+     * @param second - types known on the other, or null if it cannot be taken
+     * @return types known on both, or null if neither can be taken
+     */
+    private static Map<String, String> meet(Map<String, String> first, Map<String, String> second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        Map<String, String> both = new HashMap<>(first);
+        both.entrySet().removeIf(entry -> !entry.getValue().equals(second.get(entry.getKey())));
+        return both;
+    }
+
+    /**
+     * Method: live - works out which variables are needed before some nodes run, marking
+     *         the assignments among them that are not needed
+     * @param nodes - nodes that run one after another
+     * @param out - variables needed after the last node
+     * @return variables needed before the first node
+     */
+    private Set<String> live(List<Node> nodes, Set<String> out) {
+        Set<String> live = new HashSet<>(out);
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            live = live(nodes.get(i), live);
+        }
+        return live;
+    }
+
+    /**
+     * Method: live - works out which variables are needed before one node runs
+     * @param node - a statement, block or chain
+     * @param out - variables needed after the node
+     * @return variables needed before the node
+     */
+    private Set<String> live(Node node, Set<String> out) {
+        if (node instanceof Statement statement) {
+            return statement(statement.line(), out);
+        }
+        if (node instanceof Chain chain) {
+            // any one branch may run, or none of them without an else
+            Set<String> in = new HashSet<>();
+            boolean hasElse = false;
+            for (Block branch : chain.branches()) {
+                in.addAll(live(branch.body(), out));
+                List<Tokenizer.Token> header = tokenLines.get(branch.header());
+                addUses(header, 0, in);
+                if (header.getFirst().type == Tokenizer.Type.ELSE) hasElse = true;
+            }
+            if (!hasElse) in.addAll(out);
+            return in;
+        }
+        Block block = (Block) node;
+        List<Tokenizer.Token> header = tokenLines.get(block.header());
+        switch (header.getFirst().type) {
+            case DEF -> {
+                // a function sees only its parameters and locals, which are gone once it returns
+                live(block.body(), new HashSet<>());
+                return out;
+            }
+            case SPAWN -> {
+                // the block gets a copy of the variables, and its own assignments are never seen
+                Set<String> in = new HashSet<>(out);
+                in.addAll(live(block.body(), new HashSet<>()));
+                return in;
+            }
+            case FOR -> {
+                // for <var_name> in range ( ... ) {, the counter is assigned before each time around
+                String counter = header.get(1).lexeme;
+                Set<String> top = new HashSet<>(out);
+                while (true) {
+                    Set<String> around = live(block.body(), top);
+                    around.remove(counter);
+                    around.addAll(out);
+                    if (around.equals(top)) break;
+                    top = around;
+                }
+                Set<String> in = new HashSet<>(top);
+                addUses(header, 2, in);
+                return in;
+            }
+            default -> {
+                // a while loop checks its condition before each time around and once more to leave
+                Set<String> top = new HashSet<>(out);
+                addUses(header, 0, top);
+                while (true) {
+                    Set<String> around = live(block.body(), top);
+                    around.addAll(out);
+                    addUses(header, 0, around);
+                    if (around.equals(top)) break;
+                    top = around;
+                }
+                return top;
+            }
+        }
+    }
+
+    /**
+     * Method: statement - works out which variables are needed before a line runs, and marks
+     *         the line removed if it is an assignment that is not needed
+     * @param line - index of the line
+     * @param out - variables needed after the line
+     * @return variables needed before the line
+     */
+    private Set<String> statement(int line, Set<String> out) {
+        List<Tokenizer.Token> tokens = tokenLines.get(line);
+        Tokenizer.Type first = tokens.getFirst().type;
+        if (first == Tokenizer.Type.RETURN) {
+            // nothing after a return runs
+            Set<String> in = new HashSet<>();
+            addUses(tokens, 1, in);
+            return in;
+        }
+
+        int valueStart = valueStart(tokens);
+        if (valueStart < 0) {
+            // no assignment, so it only reads
+            Set<String> in = new HashSet<>(out);
+            addUses(tokens, 0, in);
+            return in;
+        }
+
+        String target = tokens.get(valueStart - 2).lexeme;
+        // the last visit is made with what is finally needed, so it decides
+        removed[line] = !out.contains(target) && isPure(tokens, valueStart, typesBefore.get(line));
+        if (removed[line]) return out;
+        Set<String> in = new HashSet<>(out);
+        in.remove(target);
+        addUses(tokens, valueStart, in);
+        return in;
+    }
+
+    /**
+     * Method: valueStart
+     * @param tokens - tokens of a line
+     * @return position where the right side of the assignment starts, or -1 if it is not one
+     */
+    private static int valueStart(List<Tokenizer.Token> tokens) {
+        Tokenizer.Type first = tokens.getFirst().type;
+        if (first == Tokenizer.Type.LET && tokens.size() > 3 && tokens.get(2).type == Tokenizer.Type.ASSIGNMENT) {
+            return 3;
+        } else if (first == Tokenizer.Type.VAR_NAME && tokens.get(1).type == Tokenizer.Type.ASSIGNMENT) {
+            return 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Method: typeOf
+     * @param tokens - tokens of an assignment
+     * @param from - position where its right side starts
+     * @param types - types known before the assignment
+     * @return the type the assignment stores, or null if that depends on the data
+     */
+    private static String typeOf(List<Tokenizer.Token> tokens, int from, Map<String, String> types) {
+        Tokenizer.Token token = tokens.get(from);
+        switch (token.type) {
+            case BRACKET_OPEN -> {
+                return "array";
+            }
+            case CHANNEL -> {
+                return "channel";
+            }
+            case INPUT -> {
+                return switch (token.lexeme.charAt(0)) {
+                    case 'i' -> "int";
+                    case 's' -> "string";
+                    default -> "bool";
+                };
+            }
+            case RECEIVE -> {
+                return null; // whatever was sent
+            }
+            case VAR_NAME -> {
+                if (from + 1 < tokens.size() && tokens.get(from + 1).type == Tokenizer.Type.PAREN_OPEN) {
+                    return null; // whatever the function returns
+                }
+                if (from + 2 == tokens.size()) return types.get(token.lexeme);
+            }
+            default -> { }
+        }
+        return expressionType(tokens, from);
+    }
+
+    /**
+     * Method: expressionType
+     * @param tokens - tokens of an assignment
+     * @param from - position where its right side starts
+     * @return "string", "bool" or "int", for the kind of expression the grammar takes the right side as
+     */
+    private static String expressionType(List<Tokenizer.Token> tokens, int from) {
+        String type = "int";
+        for (int i = from; i < tokens.size(); i++) {
+            switch (tokens.get(i).type) {
+                case STRING, STR_OPERATOR -> {
+                    return "string";
+                }
+                case BOOLEAN, BOOL_OPERATOR, BOOL_NOT, COMPARISON_OPERATOR -> type = "bool";
+                default -> { }
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Method: isPure
+     * @param tokens - tokens of an assignment
+     * @param from - position where its right side starts
+     * @param types - types known before the assignment
+     * @return whether the right side has no effect but its value, and cannot fail
+     */
+    private static boolean isPure(List<Tokenizer.Token> tokens, int from, Map<String, String> types) {
+        if (tokens.get(from).type == Tokenizer.Type.VAR_NAME && from + 2 == tokens.size()) {
+            // only ints, arrays and channels can be copied on their own
+            String type = types.get(tokens.get(from).lexeme);
+            return "int".equals(type) || "array".equals(type) || "channel".equals(type);
+        }
+        String expression = (tokens.get(from).type == Tokenizer.Type.BRACKET_OPEN) ? "int" : expressionType(tokens, from);
+        for (int i = from; i < tokens.size(); i++) {
+            Tokenizer.Token token = tokens.get(i);
+            switch (token.type) {
+                case INPUT, RECEIVE, CHANNEL, LEN -> {
+                    return false;
+                }
+                case VAR_NAME -> {
+                    if (i + 1 < tokens.size() && (tokens.get(i + 1).type == Tokenizer.Type.PAREN_OPEN
+                            || tokens.get(i + 1).type == Tokenizer.Type.BRACKET_OPEN)) {
+                        return false; // a call or an index
+                    }
+                    if (!neededType(tokens, i, expression).equals(types.get(token.lexeme))) return false;
+                }
+                case NUM_OPERATOR -> {
+                    if (token.lexeme.equals("/") || token.lexeme.equals("%")) {
+                        Tokenizer.Token divisor = tokens.get(i + 1);
+                        if (divisor.type != Tokenizer.Type.INT || divisor.lexeme.matches("0+")) return false;
+                    }
+                }
+                default -> { }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method: neededType
+     * @param tokens - tokens of an assignment
+     * @param at - position of a variable on its right side
+     * @param expression - the kind of expression the right side is, or "int" for the elements of an array
+     * @return the type the variable must have for the expression to work out
+     */
+    private static String neededType(List<Tokenizer.Token> tokens, int at, String expression) {
+        if (!expression.equals("bool")) return expression;
+        // in a condition, what is compared or calculated is an int and the rest are bools
+        return (isNumeric(tokens.get(at - 1)) || isNumeric(tokens.get(at + 1))) ? "int" : "bool";
+    }
+
+    /**
+     * Method: isNumeric
+     * @param token - a token next to a variable
+     * @return whether it is an operator that takes ints
+     */
+    private static boolean isNumeric(Tokenizer.Token token) {
+        return token.type == Tokenizer.Type.COMPARISON_OPERATOR || token.type == Tokenizer.Type.NUM_OPERATOR;
+    }
+
+    /**
+     * Method: addUses - adds every variable a line reads
+     * @param tokens - tokens of the line
+     * @param from - position to start looking at
+     * @param uses - set to add the names to
+     */
+    private static void addUses(List<Tokenizer.Token> tokens, int from, Set<String> uses) {
+        for (int i = from; i < tokens.size(); i++) {
+            if (tokens.get(i).type == Tokenizer.Type.VAR_NAME) uses.add(tokens.get(i).lexeme);
+        }
+    }
+
+    /**
+     * Method: opensBlock
+     * @param tokens - tokens of a line
+     * @return whether the line is a header that ends with an opening brace
+     */
+    private static boolean opensBlock(List<Tokenizer.Token> tokens) {
+        return tokens.size() >= 2 && tokens.get(tokens.size() - 2).type == Tokenizer.Type.BRACE_OPEN;
+    }
+
+    /**
+     * Method: braces
+     * @param tokens - tokens of a line
+     * @return how many braces the line has
+     */
+    private static int braces(List<Tokenizer.Token> tokens) {
+        int count = 0;
+        for (Tokenizer.Token token : tokens) {
+            if (token.type == Tokenizer.Type.BRACE_OPEN || token.type == Tokenizer.Type.BRACE_CLOSE) count++;
+        }
+        return count;
+    }
+}
@@ -1,3 +1,4 @@
+import java.math.BigInteger;
 import java.text.ParseException;
 import java.util.*;
 
@@ -10,9 +11,45 @@ import java.util.*;
 public class Execute {
     private int curr = 0;
     private List<Tokenizer.Token> tokens;
-    public Execute() {}
+    private final ScriptContext context;
+    private final int depth;
+    // set by the numeric evaluators when the value they return does not fit in a long,
+    // in which case the long they return means nothing
+    private BigInteger big;
+    public Execute() {
+        this(new ScriptContext());
+    }
+    public Execute(ScriptContext context) {
+        this(context, 0);
+    }
+    public Execute(ScriptContext context, int depth) {
+        this.context = context;
+        this.depth = depth;
+    }
     private boolean ranChain;
 
+    /**
+     * Method: storeVariable - declares or reassigns a variable, charging its size to the
+     *         run's memory accounting first so an over limit value is never stored
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @param varName - name of the variable
+     * @param value - the new value
+     * @param type - "int", "bool" or "string"
+     */
+    private void storeVariable(HashMap<String, HashMap<String, Object>> globalVariables,
+                               String varName, Object value, String type) {
+        HashMap<String, Object> old = globalVariables.get(varName);
+        context.chargeVariable(old == null ? null : old.get("val"), value, old == null);
+        ExecutionTrace trace = context.getTrace();
+        if (trace != null) trace.write(tokens.getFirst().line, varName, value);
+
+        HashMap<String, Object> varData = new HashMap<>();
+        varData.put("val", value);
+        varData.put("type", type);
+        globalVariables.put(varName, varData);
+    }
+
     /**
      * Method: executeBoolExpression - method that handles execution of boolean expressions
      * @param tokens - list of tokens from the parser
@@ -29,10 +66,7 @@ public class Execute {
 
         boolean result = evaluateBoolExpression(globalVariables);
 
-        HashMap<String, Object> varData = new HashMap<>();
-        varData.put("val", result);
-        varData.put("type", "bool");
-        globalVariables.put(varName, varData);
+        storeVariable(globalVariables, varName, result, "bool");
 
         return globalVariables;
     }
@@ -81,6 +115,17 @@ public class Execute {
         if (token.type == Tokenizer.Type.BOOLEAN) {
             curr++;
             return Boolean.parseBoolean(token.lexeme);
+        } else if (isCall(curr)) {
+            int after = callEnd(curr);
+            if (after < tokens.size() && (tokens.get(after).type == Tokenizer.Type.COMPARISON_OPERATOR
+                    || tokens.get(after).type == Tokenizer.Type.NUM_OPERATOR)) {
+                return evaluateComparisonExpression(globalVariables);
+            }
+            Object value = evaluateCall(globalVariables);
+            if (!(value instanceof Boolean)) {
+                throw new IllegalArgumentException("Function did not return a bool: " + token.lexeme);
+            }
+            return (boolean) value;
         } else if (token.type == Tokenizer.Type.VAR_NAME&&(token.type == Tokenizer.Type.VAR_NAME && globalVariables.get(token.lexeme).get("type").equals("bool"))) {
             curr++;
             String varName = token.lexeme;
@@ -101,7 +146,8 @@ public class Execute {
             }*/
             curr++;
             return result;
-        } else if (token.type == Tokenizer.Type.INT || token.type == Tokenizer.Type.VAR_NAME) {
+        } else if (token.type == Tokenizer.Type.INT || token.type == Tokenizer.Type.VAR_NAME
+                || token.type == Tokenizer.Type.LEN || token.type == Tokenizer.Type.RECEIVE) {
             return evaluateComparisonExpression(globalVariables);
         } else {
             throw new IllegalArgumentException("Invalid boolean term: " + token.lexeme);
@@ -116,7 +162,8 @@ public class Execute {
      * @return boolean corresponding to the value of the comparison expression
      */
     private boolean evaluateComparisonExpression(HashMap<String, HashMap<String, Object>> globalVariables) {
-        int leftOperand = evaluateNumExpression(globalVariables);
+        long leftOperand = evaluateNumExpression(globalVariables);
+        BigInteger bigLeft = takeBig();
         while(tokens.get(curr).type==Tokenizer.Type.PAREN_CLOSE){
             curr++;
         }
@@ -127,21 +174,22 @@ public class Execute {
         String operator = tokens.get(curr).lexeme;
         curr++;
 
-        int rightOperand = evaluateNumExpression(globalVariables);
+        long rightOperand = evaluateNumExpression(globalVariables);
+        int order = Numbers.compare(bigLeft, leftOperand, takeBig(), rightOperand);
 
         switch (operator) {
             case "<":
-                return leftOperand < rightOperand;
+                return order < 0;
             case ">":
-                return leftOperand > rightOperand;
+                return order > 0;
             case "<=":
-                return leftOperand <= rightOperand;
+                return order <= 0;
             case ">=":
-                return leftOperand >= rightOperand;
+                return order >= 0;
             case "==":
-                return leftOperand == rightOperand;
+                return order == 0;
             case "!=":
-                return leftOperand != rightOperand;
+                return order != 0;
             default:
                 throw new IllegalArgumentException("Invalid comparison operator: " + operator);
         }
@@ -161,52 +209,165 @@ public class Execute {
         String varName = (tokens.get(0).type == Tokenizer.Type.LET) ? tokens.get(1).lexeme : tokens.get(0).lexeme;
         curr = (tokens.get(0).type == Tokenizer.Type.LET) ? 3 : 2;
 
-        int result = evaluateNumExpression(globalVariables);
+        if (tokens.get(curr).type == Tokenizer.Type.VAR_NAME && curr + 1 == tokens.size() - 1
+                && globalVariables.containsKey(tokens.get(curr).lexeme)
+                && (globalVariables.get(tokens.get(curr).lexeme).get("type").equals("array")
+                || globalVariables.get(tokens.get(curr).lexeme).get("type").equals("channel"))) {
+            // arrays and channels are shared, like lists in Python
+            HashMap<String, Object> shared = globalVariables.get(tokens.get(curr).lexeme);
+            storeVariable(globalVariables, varName, shared.get("val"), (String) shared.get("type"));
+            return globalVariables;
+        }
+        if (tokens.get(curr).type == Tokenizer.Type.RECEIVE && curr + 4 == tokens.size() - 1) {
+            // a lone receive keeps whatever type was sent
+            Object value = channelVariable(globalVariables, tokens.get(curr + 2).lexeme).receive(context);
+            storeVariable(globalVariables, varName, value, typeOf(value));
+            return globalVariables;
+        }
+        if (isCall(curr) && callEnd(curr) == tokens.size() - 1) {
+            // a lone call keeps whatever type the function returned
+            String function = tokens.get(curr).lexeme;
+            Object value = evaluateCall(globalVariables);
+            if (value == null) {
+                throw new IllegalArgumentException("Function did not return a value: " + function);
+            }
+            storeVariable(globalVariables, varName, value, typeOf(value));
+            return globalVariables;
+        }
 
-        HashMap<String, Object> varData = new HashMap<>();
-        varData.put("val", result);
-        varData.put("type", "int");
-        globalVariables.put(varName, varData);
+        storeVariable(globalVariables, varName, evaluateNumber(globalVariables), "int");
 
         return globalVariables;
     }
+    /**
+     * Method: evaluateNumber - evaluates a numeric expression into the value an int variable holds
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @return the result, boxed by Numbers.box
+     */
+    private Object evaluateNumber(HashMap<String, HashMap<String, Object>> globalVariables) {
+        long result = evaluateNumExpression(globalVariables);
+        BigInteger bigResult = takeBig();
+        return (bigResult != null) ? bigResult : Numbers.box(result);
+    }
+
+    /**
+     * Method: evaluateIntExpression - evaluates a numeric expression that has to fit in a Java int
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @param what - what the value is used as, for the error
+     * @return the result
+     * @throws IllegalArgumentException - if the result does not fit in an int
+     */
+    private int evaluateIntExpression(HashMap<String, HashMap<String, Object>> globalVariables, String what) {
+        long result = evaluateNumExpression(globalVariables);
+        return Numbers.toInt(result, takeBig(), what);
+    }
+
+    /**
+     * Method: evaluateElementExpression - evaluates a numeric expression that is stored in an array
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @return the result
+     * @throws IllegalArgumentException - if the result does not fit in a long
+     */
+    private long evaluateElementExpression(HashMap<String, HashMap<String, Object>> globalVariables) {
+        long result = evaluateNumExpression(globalVariables);
+        BigInteger bigResult = takeBig();
+        if (bigResult != null) {
+            throw new IllegalArgumentException("Array element is too large: " + bigResult);
+        }
+        return result;
+    }
+
+    /**
+     * Method: takeBig
+     * @return the BigInteger the last numeric evaluation left, or null if its result fit in a long
+     */
+    private BigInteger takeBig() {
+        BigInteger result = big;
+        big = null;
+        return result;
+    }
+
     /**
      * Method: evaluateNumExpression - helper method that actually handles evaluation
-     *          of the expression
+     *          of the expression. Arithmetic is done on longs, checked for overflow; only
+     *          when a value does not fit is it done on BigIntegers, and a result that fits
+     *          in a long again goes back to the long path.
      * @param globalVariables - hashmap of variables, their types and values, that is maintained
      *                        over the entire program
-     * @return result - integer value corresponding to result of the expression
+     * @return result - value of the expression, unless it left a BigInteger in big
      */
-    private int evaluateNumExpression(HashMap<String, HashMap<String, Object>> globalVariables) {
-        int result = evaluateNumTerm(globalVariables);
+    private long evaluateNumExpression(HashMap<String, HashMap<String, Object>> globalVariables) {
+        long result = evaluateNumTerm(globalVariables);
+        BigInteger bigResult = takeBig();
 
         while (curr < tokens.size() && tokens.get(curr).type == Tokenizer.Type.NUM_OPERATOR) {
             String operator = tokens.get(curr).lexeme;
             curr++;
 
-            int term = evaluateNumTerm(globalVariables);
+            long term = evaluateNumTerm(globalVariables);
+            BigInteger bigTerm = takeBig();
 
+            if (bigResult == null && bigTerm == null) {
+                try {
+                    switch (operator) {
+                        case "+":
+                            result = Math.addExact(result, term);
+                            continue;
+                        case "-":
+                            result = Math.subtractExact(result, term);
+                            continue;
+                        case "*":
+                            result = Math.multiplyExact(result, term);
+                            continue;
+                        case "/":
+                            result = Math.divideExact(result, term);
+                            continue;
+                        case "%":
+                            result %= term;
+                            continue;
+                        default:
+                            throw new IllegalArgumentException("Invalid numeric operator: " + operator);
+                    }
+                } catch (ArithmeticException overflow) {
+                    if (term == 0) throw overflow; // division by zero
+                }
+            }
+
+            BigInteger left = (bigResult != null) ? bigResult : BigInteger.valueOf(result);
+            BigInteger right = (bigTerm != null) ? bigTerm : BigInteger.valueOf(term);
+            BigInteger value;
             switch (operator) {
                 case "+":
-                    result += term;
+                    value = left.add(right);
                     break;
                 case "-":
-                    result -= term;
+                    value = left.subtract(right);
                     break;
                 case "*":
-                    result *= term;
+                    value = left.multiply(right);
                     break;
                 case "/":
-                    result /= term;
-                    break;
                 case "%":
-                    result %= term;
+                    if (right.signum() == 0) {
+                        throw new ArithmeticException("/ by zero");
+                    }
+                    value = operator.equals("/") ? left.divide(right) : left.remainder(right);
                     break;
                 default:
                     throw new IllegalArgumentException("Invalid numeric operator: " + operator);
             }
+            if (Numbers.fitsLong(value)) {
+                result = value.longValue();
+                bigResult = null;
+            } else {
+                bigResult = value;
+            }
         }
 
+        big = bigResult;
         return result;
     }
 
@@ -214,9 +375,9 @@ public class Execute {
      * Method: evaluateNumTerm -  helper method that evaluates a single term in an expression
      * @param globalVariables- hashmap of variables, their types and values, that is maintained
      *                        over the entire program
-     * @return result - an integer corresponding to the value of the term
+     * @return result - value of the term, unless it left a BigInteger in big
      */
-    private int evaluateNumTerm(HashMap<String, HashMap<String, Object>> globalVariables) {
+    private long evaluateNumTerm(HashMap<String, HashMap<String, Object>> globalVariables) {
         if (curr >= tokens.size()) {
             throw new IllegalArgumentException("Invalid numeric expression: unexpected end of expression");
         }
@@ -225,7 +386,44 @@ public class Execute {
 
         if (token.type == Tokenizer.Type.INT) {
             curr++;
-            return Integer.parseInt(token.lexeme);
+            if (token.lexeme.length() < 19) {
+                return Long.parseLong(token.lexeme); // at most 18 digits always fits
+            }
+            return longOrBig(Numbers.parse(token.lexeme));
+        } else if (isIndex(curr)) {
+            IntArray array = arrayVariable(globalVariables, token.lexeme);
+            curr += 2;
+            int index = evaluateIntExpression(globalVariables, "Index");
+            curr++; // closing bracket
+            return array.get(index);
+        } else if (token.type == Tokenizer.Type.LEN) {
+            Tokenizer.Token of = tokens.get(curr + 2);
+            curr += 4;
+            if (of.type == Tokenizer.Type.STRING) {
+                return of.lexeme.length() - 2;
+            }
+            HashMap<String, Object> varData = globalVariables.get(of.lexeme);
+            if (varData == null) {
+                throw new IllegalArgumentException("Variable not found: " + of.lexeme);
+            }
+            Object value = varData.get("val");
+            if (value instanceof IntArray array) return array.size();
+            if (value instanceof String string) return string.length();
+            throw new IllegalArgumentException("len() needs an array or a string: " + of.lexeme);
+        } else if (token.type == Tokenizer.Type.RECEIVE) {
+            Channel channel = channelVariable(globalVariables, tokens.get(curr + 2).lexeme);
+            curr += 4;
+            Object value = channel.receive(context);
+            if (!Numbers.isInt(value)) {
+                throw new IllegalArgumentException("Received a " + typeOf(value) + " where an int was expected");
+            }
+            return longOrBig(value);
+        } else if (isCall(curr)) {
+            Object value = evaluateCall(globalVariables);
+            if (!Numbers.isInt(value)) {
+                throw new IllegalArgumentException("Function did not return an int: " + token.lexeme);
+            }
+            return longOrBig(value);
         } else if (token.type == Tokenizer.Type.VAR_NAME) {
             curr++;
             String varName = token.lexeme;
@@ -233,13 +431,14 @@ public class Execute {
                 throw new IllegalArgumentException("Variable not found: " + varName);
             }
             Object varValue = globalVariables.get(varName).get("val");
-            if (!(varValue instanceof Integer)) {
+            if (varValue instanceof Integer number) return number;
+            if (!Numbers.isInt(varValue)) {
                 throw new IllegalArgumentException("Variable is not of integer type: " + varName);
             }
-            return (int) varValue;
+            return longOrBig(varValue);
         } else if (token.type == Tokenizer.Type.PAREN_OPEN) {
             curr++;
-            int result = evaluateNumExpression(globalVariables);
+            long result = evaluateNumExpression(globalVariables); // a BigInteger result stays in big
             /*if (curr >= tokens.size() || tokens.get(curr).type != Tokenizer.Type.PAREN_CLOSE) {
                 throw new IllegalArgumentException("Invalid numeric expression: expected closing parenthesis");
             }*/
@@ -250,6 +449,19 @@ public class Execute {
         }
     }
 
+    /**
+     * Method: longOrBig - unboxes an int value for evaluateNumTerm to return
+     * @param value - an Integer, Long or BigInteger
+     * @return the value as a long, or 0 with the BigInteger left in big
+     */
+    private long longOrBig(Object value) {
+        if (value instanceof BigInteger bigValue) {
+            big = bigValue;
+            return 0;
+        }
+        return ((Number) value).longValue();
+    }
+
     /**
      * Method: executeStrExpression - method that handles execution of string expressions
      * @param tokens - list of tokens from the parser
@@ -266,10 +478,7 @@ public class Execute {
 
         String result = evaluateStrExpression(globalVariables);
 
-        HashMap<String, Object> varData = new HashMap<>();
-        varData.put("val", result);
-        varData.put("type", "string");
-        globalVariables.put(varName, varData);
+        storeVariable(globalVariables, varName, result, "string");
 
         return globalVariables;
     }
@@ -287,6 +496,7 @@ public class Execute {
         while (curr < tokens.size() && tokens.get(curr).type == Tokenizer.Type.STR_OPERATOR) {
             curr++;
             String term = evaluateStrTerm(globalVariables);
+            context.checkStringLength((long) result.length() + term.length());
             result += term;
         }
 
@@ -309,6 +519,20 @@ public class Execute {
         if (token.type == Tokenizer.Type.STRING) {
             curr++;
             return token.lexeme.substring(1, token.lexeme.length() - 1);
+        } else if (isCall(curr)) {
+            Object value = evaluateCall(globalVariables);
+            if (!(value instanceof String)) {
+                throw new IllegalArgumentException("Function did not return a string: " + token.lexeme);
+            }
+            return (String) value;
+        } else if (token.type == Tokenizer.Type.RECEIVE) {
+            Channel channel = channelVariable(globalVariables, tokens.get(curr + 2).lexeme);
+            curr += 4;
+            Object value = channel.receive(context);
+            if (!(value instanceof String)) {
+                throw new IllegalArgumentException("Received a " + typeOf(value) + " where a string was expected");
+            }
+            return (String) value;
         } else if (token.type == Tokenizer.Type.VAR_NAME) {
             curr++;
             String varName = token.lexeme;
@@ -349,13 +573,10 @@ public class Execute {
 
         String result = evaluateInputExpression(globalVariables);
 
-        HashMap<String, Object> varData = new HashMap<>();
-
         String type = (tokens.get(curr).lexeme.startsWith("s")) ? "string" : (tokens.get(curr).lexeme.startsWith("b")) ? "bool" : "int";
 
-        varData.put("val", (type.equals("int") ? Integer.valueOf(result): (type.equals("bool") ? Boolean.valueOf(result): result)));
-        varData.put("type", type);
-        globalVariables.put(varName, varData);
+        storeVariable(globalVariables, varName,
+                (type.equals("int") ? Numbers.parse(result): (type.equals("bool") ? Boolean.valueOf(result): result)), type);
 
         return globalVariables;
     }
@@ -367,8 +588,7 @@ public class Execute {
      * @return String corresponding to the next line from the scanner
      */
     private String evaluateInputExpression(HashMap<String, HashMap<String, Object>> globalVariables) {
-        Scanner scanner = new Scanner(System.in);
-        return scanner.nextLine();
+        return context.readInput();
     }
 
     /**
@@ -384,8 +604,9 @@ public class Execute {
         curr = 2;
 
         String printable = evaluatePrintExpression(globalVariables);
-        if (tokens.getFirst().type==Tokenizer.Type.PRINT) System.out.print(printable);
-        else System.out.println(printable);
+        if (tokens.getFirst().type==Tokenizer.Type.PRINT) context.getOutput().print(printable);
+        else context.getOutput().println(printable);
+        context.countOutput((tokens.getFirst().type==Tokenizer.Type.PRINT) ? printable.length() : printable.length() + 1);
 
 
     }
@@ -405,16 +626,30 @@ public class Execute {
         Tokenizer.Token token = tokens.get(curr);
         String result;
 
-        if (token.type == Tokenizer.Type.STRING || token.type == Tokenizer.Type.VAR_NAME && globalVariables.get(token.lexeme).get("type").equals("string")) {
+        if (isCall(curr)) {
+            Object value = evaluateValue(globalVariables);
+            if (value == null) {
+                throw new IllegalArgumentException("Function did not return a value: " + token.lexeme);
+            }
+            result = (value instanceof Boolean bool) ? (bool ? "True" : "False") : value.toString();
+        } else if (token.type == Tokenizer.Type.RECEIVE && valueEnd(curr) == curr + 4) {
+            Object value = channelVariable(globalVariables, tokens.get(curr + 2).lexeme).receive(context);
+            curr += 4;
+            result = (value instanceof Boolean bool) ? (bool ? "True" : "False") : value.toString();
+        } else if (token.type == Tokenizer.Type.STRING || token.type == Tokenizer.Type.VAR_NAME && globalVariables.get(token.lexeme).get("type").equals("string")) {
             result = evaluateStrExpression(globalVariables);
-        } else if (token.type == Tokenizer.Type.INT || (token.type == Tokenizer.Type.VAR_NAME && globalVariables.get(token.lexeme).get("type").equals("int"))) {
-            int oldCur=curr;
-            try {
+        } else if (token.type == Tokenizer.Type.VAR_NAME && globalVariables.get(token.lexeme).get("type").equals("array")
+                && !isIndex(curr)) {
+            result = arrayVariable(globalVariables, token.lexeme).toString();
+            curr++;
+        } else if (token.type == Tokenizer.Type.INT || token.type == Tokenizer.Type.LEN || isIndex(curr)
+                || token.type == Tokenizer.Type.RECEIVE || (token.type == Tokenizer.Type.VAR_NAME && globalVariables.get(token.lexeme).get("type").equals("int"))) {
+            // decided before evaluating anything, so a receive never runs twice and a failing
+            // comparison reports its own error
+            if (hasComparison(curr)) {
                 result = (evaluateComparisonExpression(globalVariables)) ? "True": "False";
-            } catch (IllegalArgumentException e) {
-                // If comparison fails, evaluate as a numeric expression
-                curr = oldCur;  // Reset curr to re-evaluate this token as a numeric expression
-                result = Integer.toString(evaluateNumExpression(globalVariables));
+            } else {
+                result = evaluateNumber(globalVariables).toString();
             }
         } else if (token.type == Tokenizer.Type.BOOLEAN || token.type == Tokenizer.Type.BOOL_OPERATOR || (token.type == Tokenizer.Type.VAR_NAME && globalVariables.get(token.lexeme).get("type").equals("bool"))) {
             result = (evaluateBoolExpression(globalVariables)) ? "True": "False";
@@ -436,7 +671,7 @@ public class Execute {
     /**
      * Method: executeConditionalExpression - method that handles execution of conditional blocks and
      *         loops. This is done by evaluating the conditional and running the block as needed. For
-     *         loops the method calls itself as many times as the loop runs.
+     *         loops the condition is evaluated again after every run of the block, until it is false.
      * @param globalVariables - hashmap of variables, their types and values, that is maintained
      *                        over the entire program
      * @param conditionalBlockList - ArrayList where each position is an entire block corresponding
@@ -455,57 +690,617 @@ public class Execute {
             boolean loop) throws ParseException {
 
         boolean result;
-        int index = -1;
-        ranChain=false; //No statement in the conditional chain has been run
+        int index;
+        boolean ran = false;
         ArrayList<List<Tokenizer.Token>> conditions = conditionalStmtList.get(0);
         ArrayList<List<Tokenizer.Token>> blocks = conditionalBlockList.get(0);
-        for (List<Tokenizer.Token> condition : conditions){
-            //loops through each condition checking if it is true or 'else'
-            if (condition.getFirst().type==Tokenizer.Type.ELSE){
-                index = conditions.lastIndexOf(condition);
-                ranChain=true;
-                blocks = conditionalBlockList.get(index); //retrieves appropriate block
-                break;
-            }
-            curr=0;
-            tokens=condition;
-            result = evaluateBoolExpression(globalVariables);
-            if (result){
-                index = conditions.lastIndexOf(condition);
-                ranChain=true;
-                blocks = conditionalBlockList.get(index);
-                break;
+        HashMap<String, HashMap<String, Object>> variables = globalVariables;
+        ExecutionTrace trace = context.getTrace();
+        int headerLine = blocks.getFirst().getFirst().line;
+        long iteration = 0;
+        do {
+            index = -1;
+            ranChain=false; //No statement in the conditional chain has been run
+            for (List<Tokenizer.Token> condition : conditions){
+                //loops through each condition checking if it is true or 'else'
+                if (condition.getFirst().type==Tokenizer.Type.ELSE){
+                    index = conditions.lastIndexOf(condition);
+                    ranChain=true;
+                    blocks = conditionalBlockList.get(index); //retrieves appropriate block
+                    break;
+                }
+                curr=0;
+                tokens=condition;
+                result = evaluateBoolExpression(variables);
+                if (result){
+                    index = conditions.lastIndexOf(condition);
+                    ranChain=true;
+                    blocks = conditionalBlockList.get(index);
+                    break;
+                }
             }
-        }
+            if (trace != null) {
+                if (!loop) trace.branch(headerLine, index);
+                else if (index > -1) trace.loopIteration(headerLine, iteration++);
+            }
+            if (index>-1){
+                //if it was run
+                ran = true;
+                Grammar2 nested = new Grammar2(context, depth + 1); //new Grammar2 object to parse the block
+                nested.addVariables(variables);
+                // loop back-edge, where limits and cancellation are checked
+                if (loop) context.countLoopIteration();
+                Profiler profiler = context.getProfiler();
+                if (profiler != null) {
+                    // each run of the block is its own frame under the header line
+                    int blockLine = blocks.getFirst().getFirst().line;
+                    profiler.enter(blockLine);
+                    if (loop) profiler.loopIteration(blockLine);
+                }
+                try {
+                    for (int i = 1; i<blocks.size()-1;i++) {
+                        //Adds and parses tokens
+                        curr = 0;
+                        tokens = blocks.get(i);
+                        nested.addTokens(tokens);
+                        nested.parse();
+                    }
+                } finally {
+                    if (profiler != null) profiler.exit();
+                }
+                // the next iteration of a while loop starts from the variables this one left
+                variables = nested.globalVariables;
+            }
+        } while (loop && index>-1);
+
         if (ranChain^loop) conditionalStmtList.remove(0);
         //removes condition after it has been run or if a loop is done
-        if (index>-1){
-            //if it was run
-            Grammar2 nested = new Grammar2(); //new Grammar2 object to parse the block
-            nested.addVariables(globalVariables);
-            for (int i = 1; i<blocks.size()-1;i++) {
-                //Adds and parses tokens
-                curr = 0;
-                tokens = blocks.get(i);
-                nested.addTokens(tokens);
-                //for (Tokenizer.Token token : tokens) {
-                    //System.out.println(token);
-                //}
-                nested.parse();
-            }
-            //System.out.println(nested.globalVariables);
-            if (loop) executeConditionalExpression(nested.globalVariables, conditionalBlockList,conditionalStmtList,loop);
-            // Recursively executes while loops
-            globalVariables.putAll(nested.globalVariables);
+        if (ran){
+            globalVariables.putAll(variables);
             // Updates variables
             if (ranChain^loop&&!conditionalBlockList.isEmpty()) conditionalBlockList.remove(0);
             // Removes block from list after it has been used.
+        }
 
+        return globalVariables;
+    }
+
+    /**
+     * Method: executeForLoop - runs a counted loop, for <var_name> in range(start, end[, step]).
+     *         The bounds and step are evaluated once, and the counter is a Java int that is
+     *         written into a single varData map each time around instead of going through
+     *         an assignment. The block lines are all parsed by one nested Grammar2.
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @param conditionalBlockList - ArrayList whose first position is the block of the loop
+     * @param conditionalStmtList - ArrayList whose first position holds the header of the loop
+     * @return globalVariables after the necessary values have been updated
+     * @throws ParseException - exception to be caught in parser.
+     */
+    public HashMap<String, HashMap<String, Object>> executeForLoop(
+            HashMap<String, HashMap<String, Object>> globalVariables,
+            ArrayList<ArrayList<List<Tokenizer.Token>>> conditionalBlockList,
+            ArrayList<ArrayList<List<Tokenizer.Token>>> conditionalStmtList) throws ParseException {
+        ArrayList<List<Tokenizer.Token>> block = conditionalBlockList.remove(0);
+        List<Tokenizer.Token> header = conditionalStmtList.remove(0).getFirst();
+        ranChain = false;
+
+        // for <var_name> in range ( start , end [, step] ) {
+        tokens = header;
+        curr = 5;
+        int start = evaluateIntExpression(globalVariables, "range() start");
+        curr++;
+        int end = evaluateIntExpression(globalVariables, "range() end");
+        int step = 1;
+        if (tokens.get(curr).type == Tokenizer.Type.COMMA) {
+            curr++;
+            step = evaluateIntExpression(globalVariables, "range() step");
+        }
+        if (step == 0) {
+            throw new IllegalArgumentException("range() step must not be zero");
         }
 
+        String varName = header.get(1).lexeme;
+        int headerLine = header.getFirst().line;
+        Profiler profiler = context.getProfiler();
+        ExecutionTrace trace = context.getTrace();
+        Grammar2 nested = new Grammar2(context, depth + 1);
+        nested.addVariables(globalVariables);
+        HashMap<String, Object> counter = null;
+        // long, so the last step past end cannot overflow
+        for (long i = start; (step > 0) ? i < end : i > end; i += step) {
+            context.countLoopIteration();
+            if (counter == null || nested.globalVariables.get(varName) != counter) {
+                // first time around, or the block assigned to the loop variable itself
+                storeVariable(nested.globalVariables, varName, (int) i, "int");
+                counter = nested.globalVariables.get(varName);
+            } else {
+                counter.put("val", (int) i);
+            }
+            if (trace != null) trace.loopIteration(headerLine, i);
+            if (profiler != null) {
+                profiler.enter(headerLine);
+                profiler.loopIteration(headerLine);
+            }
+            try {
+                for (int line = 1; line < block.size() - 1; line++) {
+                    nested.addTokens(block.get(line));
+                    nested.parse();
+                }
+            } finally {
+                if (profiler != null) profiler.exit();
+            }
+        }
+        globalVariables.putAll(nested.globalVariables);
         return globalVariables;
     }
 
+    /**
+     * Method: defineFunction - stores the function whose block just closed, replacing any
+     *         earlier function of the same name
+     * @param conditionalBlockList - ArrayList whose first position is the block of the function
+     * @param conditionalStmtList - ArrayList whose first position holds its header
+     */
+    public void defineFunction(
+            ArrayList<ArrayList<List<Tokenizer.Token>>> conditionalBlockList,
+            ArrayList<ArrayList<List<Tokenizer.Token>>> conditionalStmtList) {
+        ArrayList<List<Tokenizer.Token>> block = conditionalBlockList.remove(0);
+        conditionalStmtList.remove(0);
+        ranChain = false;
+
+        // def <var_name> ( [<var_name> {, <var_name>}] ) {
+        List<Tokenizer.Token> header = block.getFirst();
+        ArrayList<String> params = new ArrayList<>();
+        for (int i = 3; header.get(i).type == Tokenizer.Type.VAR_NAME; i += 2) {
+            if (params.contains(header.get(i).lexeme)) {
+                throw new IllegalArgumentException("Duplicate parameter: " + header.get(i).lexeme);
+            }
+            params.add(header.get(i).lexeme);
+            if (header.get(i + 1).type != Tokenizer.Type.COMMA) break;
+        }
+        context.defineFunction(new ScriptFunction(header.get(1).lexeme, params.toArray(new String[0]),
+                block.subList(1, block.size() - 1), depth + 1, header.getFirst().line));
+    }
+
+    /**
+     * Method: executeCallStatement - calls a function on a line of its own, ignoring what it returns
+     * @param tokens - list of tokens from the parser
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     */
+    public void executeCallStatement(
+            List<Tokenizer.Token> tokens,
+            HashMap<String, HashMap<String, Object>> globalVariables) {
+        this.tokens = tokens;
+        curr = 0;
+        evaluateCall(globalVariables);
+    }
+
+    /**
+     * Method: executeReturn - leaves the innermost function call, handing back a value
+     * @param tokens - list of tokens from the parser
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     */
+    public void executeReturn(
+            List<Tokenizer.Token> tokens,
+            HashMap<String, HashMap<String, Object>> globalVariables) {
+        CallFrame frame = context.currentFrame();
+        if (frame == null) {
+            throw new IllegalArgumentException("return outside of a function");
+        }
+        this.tokens = tokens;
+        curr = 1;
+        frame.signal.value = (tokens.get(curr).type == Tokenizer.Type.EOF) ? null : evaluateValue(globalVariables);
+        throw frame.signal;
+    }
+
+    /**
+     * Method: evaluateCall - calls the function named at curr with the arguments after it.
+     *         An inlined function has its return expression evaluated right here, against
+     *         the parameters; any other function has its block parsed by the frame's Grammar2.
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @return the value the function returned, or null if it returned none
+     */
+    private Object evaluateCall(HashMap<String, HashMap<String, Object>> globalVariables) {
+        String name = tokens.get(curr).lexeme;
+        ScriptFunction function = context.getFunction(name);
+        if (function == null) {
+            throw new IllegalArgumentException("Function not defined: " + name);
+        }
+        curr += 2;
+        CallFrame frame = context.pushFrame();
+        try {
+            int count = 0;
+            if (tokens.get(curr).type != Tokenizer.Type.PAREN_CLOSE) {
+                while (true) {
+                    Object arg = evaluateValue(globalVariables);
+                    if (count < function.params.length) {
+                        frame.bind(count, function.params[count], arg, typeOf(arg), context);
+                    }
+                    count++;
+                    if (tokens.get(curr).type != Tokenizer.Type.COMMA) break;
+                    curr++;
+                }
+            }
+            curr++; // closing paren
+            if (count != function.params.length) {
+                throw new IllegalArgumentException("Function " + name + " takes " + function.params.length
+                        + " arguments but was given " + count);
+            }
+
+            Profiler profiler = context.getProfiler();
+            if (profiler != null) profiler.enter(function.line);
+            try {
+                if (function.inlineReturn != null) {
+                    context.countStatement();
+                    List<Tokenizer.Token> callerTokens = tokens;
+                    int callerCurr = curr;
+                    tokens = function.inlineReturn;
+                    curr = 1;
+                    try {
+                        return evaluateValue(frame.locals);
+                    } finally {
+                        tokens = callerTokens;
+                        curr = callerCurr;
+                    }
+                }
+                Grammar2 body = frame.grammar(context, function.bodyDepth);
+                try {
+                    for (List<Tokenizer.Token> line : function.body) {
+                        body.addTokens(line);
+                        body.parse();
+                    }
+                } catch (CallFrame.Return returned) {
+                    return returned.value;
+                } catch (ParseException e) {
+                    throw new IllegalArgumentException("Exception when running function " + name);
+                }
+                return null;
+            } finally {
+                if (profiler != null) profiler.exit();
+            }
+        } finally {
+            context.popFrame();
+        }
+    }
+
+    /**
+     * Method: evaluateValue - evaluates a numeric, boolean or string expression that ends at a
+     *         comma, a closing parenthesis or the end of the line, telling which kind it is
+     *         from its operators, literals and variables
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @return an int value, Boolean or String, or whatever a lone function call returned
+     */
+    private Object evaluateValue(HashMap<String, HashMap<String, Object>> globalVariables) {
+        int end = valueEnd(curr);
+        if (isCall(curr) && callEnd(curr) == end) {
+            return evaluateCall(globalVariables);
+        }
+        if (tokens.get(curr).type == Tokenizer.Type.RECEIVE && curr + 4 == end) {
+            Channel channel = channelVariable(globalVariables, tokens.get(curr + 2).lexeme);
+            curr = end;
+            return channel.receive(context);
+        }
+        String kind = "int";
+        for (int i = curr; i < end; i++) {
+            if (isCall(i)) {
+                i = callEnd(i) - 1; // a call inside an expression is typed by the expression
+                continue;
+            }
+            if (tokens.get(i).type == Tokenizer.Type.RECEIVE) {
+                i += 3; // as is a receive
+                continue;
+            }
+            Tokenizer.Token token = tokens.get(i);
+            switch (token.type) {
+                case STRING, STR_OPERATOR -> kind = "string";
+                case BOOLEAN, BOOL_OPERATOR, BOOL_NOT, COMPARISON_OPERATOR -> {
+                    if (!kind.equals("string")) kind = "bool";
+                }
+                case VAR_NAME -> {
+                    HashMap<String, Object> varData = globalVariables.get(token.lexeme);
+                    if (isIndex(i)) {
+                        // an element is an int, whatever the array is
+                    } else if (varData != null && !varData.get("type").equals("int") && !kind.equals("string")) {
+                        kind = (String) varData.get("type");
+                    }
+                }
+                default -> { }
+            }
+        }
+        return switch (kind) {
+            case "array" -> {
+                IntArray array = arrayVariable(globalVariables, tokens.get(curr).lexeme);
+                curr++;
+                yield array;
+            }
+            case "channel" -> {
+                Channel channel = channelVariable(globalVariables, tokens.get(curr).lexeme);
+                curr++;
+                yield channel;
+            }
+            case "string" -> evaluateStrExpression(globalVariables);
+            case "bool" -> evaluateBoolExpression(globalVariables);
+            default -> evaluateNumber(globalVariables);
+        };
+    }
+
+    /**
+     * Method: executeSpawn - starts the block that just closed on a thread of its own. The
+     *         block gets a copy of the variables as they are now, so neither side sees the
+     *         other's assignments afterwards; channels are the only thing the two share.
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @param conditionalBlockList - ArrayList whose first position is the spawned block
+     * @param conditionalStmtList - ArrayList whose first position holds its header
+     */
+    public void executeSpawn(
+            HashMap<String, HashMap<String, Object>> globalVariables,
+            ArrayList<ArrayList<List<Tokenizer.Token>>> conditionalBlockList,
+            ArrayList<ArrayList<List<Tokenizer.Token>>> conditionalStmtList) {
+        ArrayList<List<Tokenizer.Token>> block = conditionalBlockList.remove(0);
+        conditionalStmtList.remove(0);
+        ranChain = false;
+
+        ScriptContext task = context.forTask();
+        HashMap<String, HashMap<String, Object>> variables = new HashMap<>();
+        for (Map.Entry<String, HashMap<String, Object>> entry : globalVariables.entrySet()) {
+            Object value = entry.getValue().get("val");
+            if (value instanceof IntArray array) {
+                value = IntArray.of(array.toArray());
+            }
+            task.chargeVariable(null, value, true);
+            HashMap<String, Object> varData = new HashMap<>();
+            varData.put("val", value);
+            varData.put("type", entry.getValue().get("type"));
+            variables.put(entry.getKey(), varData);
+        }
+        int blockDepth = depth + 1;
+        context.spawn(() -> {
+            Grammar2 nested = new Grammar2(task, blockDepth);
+            nested.addVariables(variables);
+            try {
+                for (int line = 1; line < block.size() - 1; line++) {
+                    nested.addTokens(block.get(line));
+                    nested.parse();
+                }
+                task.joinTasks();
+            } catch (RuntimeException e) {
+                task.attachTrace(e);
+                throw e;
+            } catch (ParseException e) {
+                IllegalArgumentException failure = new IllegalArgumentException("Exception when running spawned block", e);
+                task.attachTrace(failure);
+                throw failure;
+            } finally {
+                task.cancelTasks();
+                // the block's variables are gone with it, and so is what they were charged to the run
+                for (HashMap<String, Object> varData : nested.globalVariables.values()) {
+                    task.releaseVariable(varData.get("val"));
+                }
+            }
+        });
+    }
+
+    /**
+     * Method: executeJoin - waits for every block spawned so far to finish
+     */
+    public void executeJoin() {
+        context.joinTasks();
+    }
+
+    /**
+     * Method: executeChannel - method that handles declaring or assigning a new channel,
+     *         channel(capacity)
+     * @param tokens - list of tokens from the parser
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @return globalVariables after the necessary values have been updated
+     */
+    public HashMap<String, HashMap<String, Object>> executeChannel(
+            List<Tokenizer.Token> tokens,
+            HashMap<String, HashMap<String, Object>> globalVariables) {
+        this.tokens = tokens;
+        String varName = (tokens.get(0).type == Tokenizer.Type.LET) ? tokens.get(1).lexeme : tokens.get(0).lexeme;
+        curr = (tokens.get(0).type == Tokenizer.Type.LET) ? 5 : 4;
+        storeVariable(globalVariables, varName, new Channel(evaluateIntExpression(globalVariables, "Channel capacity")), "channel");
+        return globalVariables;
+    }
+
+    /**
+     * Method: executeSend - method that handles send(name, value)
+     * @param tokens - list of tokens from the parser
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     */
+    public void executeSend(
+            List<Tokenizer.Token> tokens,
+            HashMap<String, HashMap<String, Object>> globalVariables) {
+        this.tokens = tokens;
+        Channel channel = channelVariable(globalVariables, tokens.get(2).lexeme);
+        curr = 4;
+        Object value = evaluateValue(globalVariables);
+        if (value == null) {
+            throw new IllegalArgumentException("Function did not return a value");
+        }
+        channel.send(value, typeOf(value), context);
+    }
+
+    /**
+     * Method: channelVariable
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @param varName - name of a channel variable
+     * @return the channel the variable holds
+     */
+    private Channel channelVariable(HashMap<String, HashMap<String, Object>> globalVariables, String varName) {
+        if (!globalVariables.containsKey(varName)) {
+            throw new IllegalArgumentException("Variable not found: " + varName);
+        }
+        Object value = globalVariables.get(varName).get("val");
+        if (!(value instanceof Channel channel)) {
+            throw new IllegalArgumentException("Variable is not a channel: " + varName);
+        }
+        return channel;
+    }
+
+    /**
+     * Method: executeArrayLiteral - method that handles declaring or assigning an array literal
+     * @param tokens - list of tokens from the parser
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @return globalVariables after the necessary values have been updated
+     */
+    public HashMap<String, HashMap<String, Object>> executeArrayLiteral(
+            List<Tokenizer.Token> tokens,
+            HashMap<String, HashMap<String, Object>> globalVariables) {
+        this.tokens = tokens;
+        String varName = (tokens.get(0).type == Tokenizer.Type.LET) ? tokens.get(1).lexeme : tokens.get(0).lexeme;
+        curr = (tokens.get(0).type == Tokenizer.Type.LET) ? 4 : 3;
+
+        // not charged as it grows: storeVariable charges the whole array, at its final capacity
+        IntArray array = new IntArray(tokens.size() / 2);
+        while (tokens.get(curr).type != Tokenizer.Type.BRACKET_CLOSE) {
+            array.append(evaluateElementExpression(globalVariables));
+            if (tokens.get(curr).type == Tokenizer.Type.COMMA) curr++;
+        }
+        storeVariable(globalVariables, varName, array, "array");
+
+        return globalVariables;
+    }
+
+    /**
+     * Method: executeElementAssign - method that handles assigning to one element, name[index] = value
+     * @param tokens - list of tokens from the parser
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     */
+    public void executeElementAssign(
+            List<Tokenizer.Token> tokens,
+            HashMap<String, HashMap<String, Object>> globalVariables) {
+        this.tokens = tokens;
+        IntArray array = arrayVariable(globalVariables, tokens.get(0).lexeme);
+        curr = 2;
+        int index = evaluateIntExpression(globalVariables, "Index");
+        curr += 2; // closing bracket and =
+        array.set(index, evaluateElementExpression(globalVariables));
+    }
+
+    /**
+     * Method: executeAppend - method that handles append(name, value)
+     * @param tokens - list of tokens from the parser
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     */
+    public void executeAppend(
+            List<Tokenizer.Token> tokens,
+            HashMap<String, HashMap<String, Object>> globalVariables) {
+        this.tokens = tokens;
+        IntArray array = arrayVariable(globalVariables, tokens.get(2).lexeme);
+        curr = 4;
+        long value = evaluateElementExpression(globalVariables);
+        context.chargeBytes(array.append(value)); // whatever the storage grew by, usually nothing
+    }
+
+    /**
+     * Method: arrayVariable
+     * @param globalVariables - hashmap of variables, their types and values, that is maintained
+     *                        over the entire program
+     * @param varName - name of an array variable
+     * @return the array the variable holds
+     */
+    private IntArray arrayVariable(HashMap<String, HashMap<String, Object>> globalVariables, String varName) {
+        if (!globalVariables.containsKey(varName)) {
+            throw new IllegalArgumentException("Variable not found: " + varName);
+        }
+        Object value = globalVariables.get(varName).get("val");
+        if (!(value instanceof IntArray array)) {
+            throw new IllegalArgumentException("Variable is not an array: " + varName);
+        }
+        return array;
+    }
+
+    /**
+     * Method: isIndex
+     * @param index - position of a token
+     * @return whether an array element, name[index], starts at the token
+     */
+    private boolean isIndex(int index) {
+        return index + 1 < tokens.size() && tokens.get(index).type == Tokenizer.Type.VAR_NAME
+                && tokens.get(index + 1).type == Tokenizer.Type.BRACKET_OPEN;
+    }
+
+    /**
+     * Method: isCall
+     * @param index - position of a token
+     * @return whether a function call starts at the token
+     */
+    private boolean isCall(int index) {
+        return index + 1 < tokens.size() && tokens.get(index).type == Tokenizer.Type.VAR_NAME
+                && tokens.get(index + 1).type == Tokenizer.Type.PAREN_OPEN;
+    }
+
+    /**
+     * Method: callEnd
+     * @param index - position of the name of a function call
+     * @return position just past the call's closing parenthesis
+     */
+    private int callEnd(int index) {
+        int nesting = 0;
+        for (int i = index + 1; i < tokens.size(); i++) {
+            if (tokens.get(i).type == Tokenizer.Type.PAREN_OPEN) nesting++;
+            else if (tokens.get(i).type == Tokenizer.Type.PAREN_CLOSE && --nesting == 0) return i + 1;
+        }
+        return tokens.size();
+    }
+
+    /**
+     * Method: valueEnd
+     * @param index - position where a value starts
+     * @return position of the comma, closing parenthesis or end of line that ends the value
+     */
+    private int valueEnd(int index) {
+        int nesting = 0;
+        for (int i = index; i < tokens.size(); i++) {
+            Tokenizer.Type type = tokens.get(i).type;
+            if (type == Tokenizer.Type.EOF) return i;
+            if (type == Tokenizer.Type.PAREN_OPEN) nesting++;
+            else if (type == Tokenizer.Type.PAREN_CLOSE && nesting-- == 0) return i;
+            else if (type == Tokenizer.Type.COMMA && nesting == 0) return i;
+        }
+        return tokens.size();
+    }
+
+    /**
+     * Method: hasComparison
+     * @param index - position where a value starts
+     * @return whether a comparison operator comes before the end of the value
+     */
+    private boolean hasComparison(int index) {
+        int end = valueEnd(index);
+        for (int i = index; i < end; i++) {
+            if (tokens.get(i).type == Tokenizer.Type.COMPARISON_OPERATOR) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method: typeOf
+     * @param value - an Integer, Long, BigInteger, Boolean or String
+     * @return the type name stored with a variable holding the value
+     */
+    private static String typeOf(Object value) {
+        if (Numbers.isInt(value)) return "int";
+        if (value instanceof Boolean) return "bool";
+        if (value instanceof String) return "string";
+        if (value instanceof IntArray) return "array";
+        if (value instanceof Channel) return "channel";
+        throw new IllegalArgumentException("Function did not return a value");
+    }
+
     /**
      * Method: getRanChain - returns whether a conditional chain has been run
      * @return ranChain
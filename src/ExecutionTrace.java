@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+/**
+ * class: ExecutionTrace
+ * A fixed size ring buffer of the most recent things a run did: statements
+ * run, branches taken, loop iterations, and variables written with their
+ * new values. Every context keeps one, so when a run fails the last events
+ * leading up to the failure are attached to the exception.
+ *
+ * Events are kept in parallel arrays allocated once, and recording an event
+ * is a few array stores. Values are stored as the references the
+ * interpreter already holds, so recording does not allocate, except for
+ * arrays: they change in place, so each write keeps a copy of the array as
+ * it was then. Text is only built when the trace is dumped. Not thread safe: a spawned block gets a
+ * trace of its own along with its context.
+ */
+public class ExecutionTrace {
+    public static final int DEFAULT_EVENTS = 64;
+    private static final byte STATEMENT = 0, BRANCH = 1, LOOP = 2, WRITE = 3;
+    private final int mask;
+    private final byte[] kinds;
+    private final int[] lines;
+    private final long[] numbers; // branch taken or loop iteration
+    private final String[] names; // variable written
+    private final Object[] values; // value written
+    private long recorded = 0;
+
+    /**
+     * Constructor: builds an empty trace
+     * @param events - how many of the latest events to keep, rounded up to a power of two
+     */
+    public ExecutionTrace(int events) {
+        if (events < 1) {
+            throw new IllegalArgumentException("A trace must keep at least 1 event: " + events);
+        }
+        int capacity = Integer.highestOneBit(events);
+        if (capacity < events) capacity <<= 1;
+        mask = capacity - 1;
+        kinds = new byte[capacity];
+        lines = new int[capacity];
+        numbers = new long[capacity];
+        names = new String[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Method: statement - records a line starting to run
+     * @param line - line number of the statement
+     */
+    public void statement(int line) {
+        int i = (int) (recorded++ & mask);
+        kinds[i] = STATEMENT;
+        lines[i] = line;
+        names[i] = null;
+        values[i] = null;
+    }
+
+    /**
+     * Method: branch - records which block of an if-elif-else chain ran
+     * @param line - line number of the chain's first header
+     * @param taken - position of the block that ran in the chain, -1 if none did
+     */
+    public void branch(int line, int taken) {
+        int i = (int) (recorded++ & mask);
+        kinds[i] = BRANCH;
+        lines[i] = line;
+        numbers[i] = taken;
+        names[i] = null;
+        values[i] = null;
+    }
+
+    /**
+     * Method: loopIteration - records one time around a loop
+     * @param line - line number of the loop header
+     * @param iteration - the iteration, counted from 0 for a while loop or the counter of a for loop
+     */
+    public void loopIteration(int line, long iteration) {
+        int i = (int) (recorded++ & mask);
+        kinds[i] = LOOP;
+        lines[i] = line;
+        numbers[i] = iteration;
+        names[i] = null;
+        values[i] = null;
+    }
+
+    /**
+     * Method: write - records a variable being declared or assigned
+     * @param line - line number of the statement
+     * @param name - name of the variable
+     * @param value - its new value
+     */
+    public void write(int line, String name, Object value) {
+        int i = (int) (recorded++ & mask);
+        kinds[i] = WRITE;
+        lines[i] = line;
+        names[i] = name;
+        values[i] = (value instanceof IntArray array) ? IntArray.of(array.toArray()) : value;
+    }
+
+    /**
+     * Method: clear - forgets every event, keeping the buffers
+     */
+    public void clear() {
+        Arrays.fill(names, null);
+        Arrays.fill(values, null);
+        recorded = 0;
+    }
+
+    /**
+     * Method: getRecorded
+     * @return how many events have been recorded, including ones since overwritten
+     */
+    public long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Method: dump - the events still kept, oldest first, one per line
+     * @return the events as text
+     */
+    public String dump() {
+        StringBuilder result = new StringBuilder();
+        long first = Math.max(0, recorded - (mask + 1));
+        if (first > 0) result.append("... ").append(first).append(" earlier events\n");
+        for (long event = first; event < recorded; event++) {
+            int i = (int) (event & mask);
+            result.append("line ").append(lines[i]).append(": ");
+            switch (kinds[i]) {
+                case STATEMENT -> result.append("statement");
+                case BRANCH -> result.append(numbers[i] < 0 ? "no branch taken" : "branch " + numbers[i] + " taken");
+                case LOOP -> result.append("loop iteration ").append(numbers[i]);
+                default -> result.append(names[i]).append(" = ").append(format(values[i]));
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Method: toException - the dump, as an exception that can be added to a failure with addSuppressed
+     * @return the exception
+     */
+    public Dump toException() {
+        return new Dump("Last events before the failure:\n" + dump());
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Boolean bool) return bool ? "True" : "False";
+        if (value instanceof String string) return "\"" + string + "\"";
+        return String.valueOf(value);
+    }
+
+    /**
+     * class: Dump
+     * Carries a dump of the trace on the exception that ended a run. It has no
+     * stack trace of its own, as it is not where anything went wrong.
+     */
+    public static class Dump extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Dump(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
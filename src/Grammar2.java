@@ -15,7 +15,7 @@ import java.util.Stack;
  * our language.
  */
 class Tokenizer {
-    public static int lines = 1;
+    public int lines = 1;
     private Stack<Tokenizer.Type> bracketStack = new Stack<>();
 
     /**
@@ -37,13 +37,28 @@ class Tokenizer {
         BRACE_CLOSE("^\\}"),
         PAREN_OPEN("^\\("),
         PAREN_CLOSE("^\\)"),
+        BRACKET_OPEN("^\\["),
+        BRACKET_CLOSE("^\\]"),
         LOOP("^while\\b"),
+        FOR("^for\\b"),
+        IN("^in\\b"),
+        RANGE("^range\\b"),
+        COMMA("^,"),
         PUTS("^puts\\b"),
         PRINT("^print\\b"),
         IF("^if\\b"),
         ELSE("^else\\b"),
         ELIF("^elif\\b"),
         LET("^let\\b"),
+        DEF("^def\\b"),
+        RETURN("^return\\b"),
+        LEN("^len\\b"),
+        APPEND("^append\\b"),
+        SPAWN("^spawn\\b"),
+        JOIN("^join\\b"),
+        CHANNEL("^channel\\b"),
+        SEND("^send\\b"),
+        RECEIVE("^receive\\b"),
         INPUT("^[bsi]Input$"),
         VAR_NAME("^[a-zA-Z]\\w*"),
         WHITESPACE("^[\\s\\t]+"),
@@ -58,10 +73,16 @@ class Tokenizer {
     public class Token {
         public Type type;
         public String lexeme;
+        public int line; // line of the source file the token was found on
 
         public Token(Type type, String lexeme) {
+            this(type, lexeme, lines);
+        }
+
+        public Token(Type type, String lexeme, int line) {
             this.type = type;
             this.lexeme = lexeme;
+            this.line = line;
         }
 
         @Override
@@ -183,10 +204,39 @@ class Tokenizer {
      *                   bracket or parenthesis.
      */
     public void checkBrackets(List<String> inputLines){
+        tokenizeAll(inputLines);
+    }
+
+    /**
+     * Function: tokenizeAll
+     * @param inputLines - List of Strings, should contain all strings from the
+     *                   input file.
+     * @return - Returns the tokens of every line, in order
+     * Description: Does the same error checking as checkBrackets, but keeps the
+     *                   tokens of each line so the file only has to be tokenized once.
+     */
+    public List<ArrayList<Token>> tokenizeAll(List<String> inputLines){
+        ScriptEvents.Tokenize event = new ScriptEvents.Tokenize();
+        event.begin();
+        long start = System.nanoTime();
+        List<ArrayList<Token>> tokenLines = new ArrayList<>();
         for (String line: inputLines){
-            ArrayList<Token> tokens = tokenize(line); // populate bracket stack
+            tokenLines.add(tokenize(line)); // populate bracket stack
             lines++;
         }
+        InterpreterMetrics.get().recordTokenize(inputLines.size(), System.nanoTime() - start);
+        event.lines = inputLines.size();
+        event.commit();
+        checkUnclosed();
+        return tokenLines;
+    }
+
+    /**
+     * Function: checkUnclosed
+     * Description: Throws an error if any bracket or parenthesis is still open. Call
+     *                   once every line of the input has been tokenized.
+     */
+    public void checkUnclosed(){
         if (!bracketStack.isEmpty()){ // check for remaining unclosed brackets or parents in stack
             Type unclosed = bracketStack.peek();
             String notClosed = "";
@@ -199,6 +249,41 @@ class Tokenizer {
             throw new IllegalArgumentException("Unclosed bracket or parenthesis at end of input: " + notClosed );
         }
     }
+
+    /**
+     * Function: endLine
+     * @param line - the line that was just tokenized
+     * Description: Used when lines are tokenized one at a time as they arrive. A
+     *                   statement never continues onto the next line, so a parenthesis
+     *                   still open at the end of a line is already an error. Braces may
+     *                   stay open until checkUnclosed is called.
+     */
+    public void endLine(String line){
+        if (bracketStack.contains(Type.PAREN_OPEN)){
+            String errorMsg = "Unclosed parenthesis '(' at end of line\n";
+            errorMsg += makeErrorIndicator(line, line.length());
+            throw new IllegalArgumentException(errorMsg);
+        }
+        lines++;
+    }
+
+    /**
+     * Function: openBrackets
+     * @return - how many brackets and parentheses are still open. After endLine, these
+     *                   are all braces of blocks that have not been closed yet.
+     */
+    public int openBrackets(){
+        return bracketStack.size();
+    }
+
+    /**
+     * Function: clearBrackets
+     * Description: Forgets every open bracket, so tokenizing can start over after a
+     *                   line that had an error.
+     */
+    public void clearBrackets(){
+        bracketStack.clear();
+    }
 }
 
 /**
@@ -218,13 +303,27 @@ public class Grammar2 {
     private boolean inCondBlock = false;
     private boolean condChain = false;
     private boolean ranChain = false;
-    private Execute exec = new Execute();
+    private boolean validateOnly = false;
+    private final ScriptContext context;
+    private final int depth; // how many blocks the lines this object parses are inside of
+    private final Execute exec;
     public int curr = 0;
 
     public Grammar2(List<Tokenizer.Token> tokens){
+        this(new ScriptContext());
         this.tokens = tokens;
     }
-    public Grammar2(){}
+    public Grammar2(){
+        this(new ScriptContext());
+    }
+    public Grammar2(ScriptContext context){
+        this(context, 0);
+    }
+    public Grammar2(ScriptContext context, int depth){
+        this.context = context;
+        this.depth = depth;
+        this.exec = new Execute(context, depth);
+    }
 
     /**
      * Function: match()
@@ -254,6 +353,54 @@ public class Grammar2 {
         tokens = newTokens;
     }
 
+    /**
+     * function: setValidateOnly
+     * @param validateOnly - when true, lines are only checked against the grammar
+     *                     and nothing is executed
+     */
+    public void setValidateOnly(boolean validateOnly) {
+        this.validateOnly = validateOnly;
+    }
+
+    /**
+     * function: isIdle
+     * @return - whether every block seen so far has been closed and run. Unless the next
+     *                  line continues an if-elif-else chain, nothing but the variables is
+     *                  carried over to it.
+     */
+    public boolean isIdle() {
+        return !inCondBlock && bracketStack.isEmpty();
+    }
+
+    /**
+     * function: reset
+     * Description: Forgets the variables and any half finished block, so the object
+     *                  can parse a new run of lines. Used for the pooled Grammar2 of a
+     *                  function call frame, which a return can leave mid block.
+     */
+    public void reset() {
+        discardBlock();
+        globalVariables.clear();
+    }
+
+    /**
+     * function: discardBlock
+     * Description: Forgets any half finished block and if-elif-else chain, keeping the
+     *                  variables. Used to carry on with the next line after one failed.
+     */
+    public void discardBlock() {
+        curr = 0;
+        tokens = null;
+        conditionalBlockList.clear();
+        conditionalStmtList.clear();
+        curConditionalBlockList.clear();
+        curConditionalStmtsList.clear();
+        bracketStack.clear();
+        inCondBlock = false;
+        condChain = false;
+        ranChain = false;
+    }
+
     /**
      * function: addVariables()
      * Adds global variables to the global variables hashMap to allow for
@@ -297,10 +444,30 @@ public class Grammar2 {
      * down the grammar rules.
      */
     public boolean parse() throws ParseException {
-        while (!atEnd()){ // continue parsing until at the end of line or file
-            if (!parseProgram()){
-                throw new ParseException("Syntax Error", 0);
+        if (tokens instanceof LazyTokenLine lazy && lazy.minDepth > depth) {
+            // a line of an inner block, kept untokenized until that block runs
+            curConditionalBlockList.add(tokens);
+            return true;
+        }
+        // a line inside a block is only collected here, and counted, traced and profiled when the block runs it
+        boolean runs = !inCondBlock;
+        if (runs) {
+            context.countStatement();
+            ExecutionTrace trace = context.getTrace();
+            if (trace != null) trace.statement(tokens.getFirst().line);
+        }
+        // a header only starts collecting its block; Execute profiles each run of the block under it
+        boolean opensBlock = tokens.size() >= 2 && tokens.get(tokens.size() - 2).type == Tokenizer.Type.BRACE_OPEN;
+        Profiler profiler = (runs && !opensBlock) ? context.getProfiler() : null;
+        if (profiler != null) profiler.enter(tokens.getFirst().line);
+        try {
+            while (!atEnd()){ // continue parsing until at the end of line or file
+                if (!parseProgram()){
+                    throw new ParseException("Syntax Error", 0);
+                }
             }
+        } finally {
+            if (profiler != null) profiler.exit();
         }
         curr = 0; // reset curr for new line
         return true; // parsing successful
@@ -360,8 +527,20 @@ public class Grammar2 {
                 }
             }
         }
-        if (!inCondBlock && !conditionalBlockList.isEmpty()){
+        if (!inCondBlock && !validateOnly && !conditionalBlockList.isEmpty()){
             try {
+                if (conditionalBlockList.get(0).get(0).get(0).type==Tokenizer.Type.DEF) {
+                    exec.defineFunction(conditionalBlockList, conditionalStmtList);
+                    return true;
+                }
+                if (conditionalBlockList.get(0).get(0).get(0).type==Tokenizer.Type.SPAWN) {
+                    exec.executeSpawn(globalVariables, conditionalBlockList, conditionalStmtList);
+                    return true;
+                }
+                if (conditionalBlockList.get(0).get(0).get(0).type==Tokenizer.Type.FOR) {
+                    globalVariables = exec.executeForLoop(globalVariables, conditionalBlockList, conditionalStmtList);
+                    return true;
+                }
                 if((condChain&& !ranChain )||!condChain) {
                     boolean loop = conditionalBlockList.get(0).get(0).get(0).type==Tokenizer.Type.LOOP;
                     globalVariables = exec.executeConditionalExpression(globalVariables, conditionalBlockList,
@@ -370,8 +549,8 @@ public class Grammar2 {
                     //System.out.println("Returning");
                     return true;
                 }
-            } catch (IllegalArgumentException _) {
-                throw new IllegalArgumentException("Illegal argument in condition");
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Illegal argument in condition", e);
             } catch (ParseException e) {
                 throw new IllegalArgumentException("Exception when running conditional block");
             }
@@ -403,22 +582,88 @@ public class Grammar2 {
         } else if (match(Tokenizer.Type.LOOP)) {
             return parseCond();
 
+            // counted loop, parse the header; the block is collected like a while loop's
+        } else if (match(Tokenizer.Type.FOR)) {
+            return parseFor();
+
+            // function declaration, its block is collected like a loop's and stored when it closes
+        } else if (match(Tokenizer.Type.DEF)) {
+            return parseDef();
+
+            // block run on a thread of its own, collected like a loop's and started when it closes
+        } else if (match(Tokenizer.Type.SPAWN)) {
+            if (!match(Tokenizer.Type.BRACE_OPEN) || !atEnd()) {
+                return false;
+            }
+            bracketStack.push(Tokenizer.Type.BRACE_OPEN);
+            curConditionalStmtsList.add(tokens);
+            inCondBlock = true;
+            return true;
+
+            // waiting for every spawned block to finish
+        } else if (match(Tokenizer.Type.JOIN)) {
+            if (!match(Tokenizer.Type.PAREN_OPEN) || !match(Tokenizer.Type.PAREN_CLOSE) || !atEnd()) {
+                return false;
+            }
+            if (!inCondBlock && !validateOnly) exec.executeJoin();
+            return true;
+
+            // sending a value on a channel
+        } else if (match(Tokenizer.Type.SEND)) {
+            if (!match(Tokenizer.Type.PAREN_OPEN) || !match(Tokenizer.Type.VAR_NAME) || !match(Tokenizer.Type.COMMA)
+                    || !parseArgument() || !match(Tokenizer.Type.PAREN_CLOSE) || !atEnd()) {
+                return false;
+            }
+            if (!inCondBlock && !validateOnly) exec.executeSend(tokens, globalVariables);
+            return true;
+
+            // adding an element to the end of an array
+        } else if (match(Tokenizer.Type.APPEND)) {
+            if (!match(Tokenizer.Type.PAREN_OPEN) || !match(Tokenizer.Type.VAR_NAME) || !match(Tokenizer.Type.COMMA)
+                    || !parseNumExpression() || !match(Tokenizer.Type.PAREN_CLOSE) || !atEnd()) {
+                return false;
+            }
+            if (!inCondBlock && !validateOnly) exec.executeAppend(tokens, globalVariables);
+            return true;
+
+            // leaving a function, with or without a value
+        } else if (match(Tokenizer.Type.RETURN)) {
+            if (!atEnd() && (!parseArgument() || !atEnd())) {
+                return false;
+            }
+            if (!inCondBlock && !validateOnly) exec.executeReturn(tokens, globalVariables);
+            return true;
+
             // printing output, parse a print statement
         } else if (match(Tokenizer.Type.PRINT)||match(Tokenizer.Type.PUTS)) {
             if(parsePrint()){
                 try {
                     // printing the correct variables
-                    if (!inCondBlock) exec.executePrintExpression(tokens, globalVariables);
+                    if (!inCondBlock && !validateOnly) exec.executePrintExpression(tokens, globalVariables);
                     //System.out.println("Returning");
                     return true;
-                } catch (IllegalArgumentException _) {
-                    throw new IllegalArgumentException("Invalid format for output");
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid format for output", e);
                 }
             }
             else return false;
 
             // in assignment block, parse the variable assignment (not declaration)
         } else if (match(Tokenizer.Type.VAR_NAME)) {
+            if (tokens.get(curr).type == Tokenizer.Type.BRACKET_OPEN) { // assigning an array element
+                if (!parseIndex() || !match(Tokenizer.Type.ASSIGNMENT) || !parseNumExpression() || !atEnd()) {
+                    return false;
+                }
+                if (!inCondBlock && !validateOnly) exec.executeElementAssign(tokens, globalVariables);
+                return true;
+            }
+            if (tokens.get(curr).type == Tokenizer.Type.PAREN_OPEN) { // function call on its own
+                if (!parseCallArgs() || !atEnd()) {
+                    return false;
+                }
+                if (!inCondBlock && !validateOnly) exec.executeCallStatement(tokens, globalVariables);
+                return true;
+            }
             curr = 0;
             return parseAssign();
 
@@ -468,6 +713,130 @@ public class Grammar2 {
         return true;
     }
 
+    /**
+     * function: parseFor()
+     * @return - returns the success of parsing the header of a counted loop
+     * Description: parses a for loop header, which has the structure:
+     * for <var_name> in range(<num_expression>, <num_expression>[, <num_expression>]) {
+     */
+    private boolean parseFor(){
+        if (!match(Tokenizer.Type.VAR_NAME) || !match(Tokenizer.Type.IN) || !match(Tokenizer.Type.RANGE)
+                || !match(Tokenizer.Type.PAREN_OPEN) || !parseNumExpression()
+                || !match(Tokenizer.Type.COMMA) || !parseNumExpression()){
+            return false;
+        }
+        if (match(Tokenizer.Type.COMMA) && !parseNumExpression()){ // optional step
+            return false;
+        }
+        if (!match(Tokenizer.Type.PAREN_CLOSE) || !match(Tokenizer.Type.BRACE_OPEN)){
+            return false;
+        }
+        bracketStack.push(Tokenizer.Type.BRACE_OPEN);
+        curConditionalStmtsList.add(tokens);
+        inCondBlock = true;
+        return true;
+    }
+
+    /**
+     * function: parseDef()
+     * @return - returns the success of parsing the header of a function declaration
+     * Description: parses a function header, which has the structure:
+     * def <var_name>([<var_name> {, <var_name>}]) {
+     */
+    private boolean parseDef(){
+        if (!match(Tokenizer.Type.VAR_NAME) || !match(Tokenizer.Type.PAREN_OPEN)){
+            return false;
+        }
+        if (!match(Tokenizer.Type.PAREN_CLOSE)){
+            do {
+                if (!match(Tokenizer.Type.VAR_NAME)){
+                    return false;
+                }
+            } while (match(Tokenizer.Type.COMMA));
+            if (!match(Tokenizer.Type.PAREN_CLOSE)){
+                return false;
+            }
+        }
+        if (!match(Tokenizer.Type.BRACE_OPEN)){
+            return false;
+        }
+        bracketStack.push(Tokenizer.Type.BRACE_OPEN);
+        curConditionalStmtsList.add(tokens);
+        inCondBlock = true;
+        return true;
+    }
+
+    /**
+     * function: parseIndex()
+     * @return - returns the success of parsing the index after an array name, [<num_expression>]
+     */
+    private boolean parseIndex(){
+        return match(Tokenizer.Type.BRACKET_OPEN) && parseNumExpression() && match(Tokenizer.Type.BRACKET_CLOSE);
+    }
+
+    /**
+     * function: parseArrayLiteral()
+     * @return - returns the success of parsing an array literal, which has the structure:
+     * [[<num_expression> {, <num_expression>}]]
+     * Arrays only hold ints, see IntArray.
+     */
+    private boolean parseArrayLiteral(){
+        if (!match(Tokenizer.Type.BRACKET_OPEN)){
+            return false;
+        }
+        if (match(Tokenizer.Type.BRACKET_CLOSE)){
+            return true;
+        }
+        do {
+            if (!parseNumExpression()){
+                return false;
+            }
+        } while (match(Tokenizer.Type.COMMA));
+        return match(Tokenizer.Type.BRACKET_CLOSE);
+    }
+
+    /**
+     * function: parseCallArgs()
+     * @return - returns the success of parsing the arguments of a function call
+     * Description: parses the arguments after a function name, which have the structure:
+     * ([<expression> {, <expression>}])
+     */
+    private boolean parseCallArgs(){
+        if (!match(Tokenizer.Type.PAREN_OPEN)){
+            return false;
+        }
+        if (match(Tokenizer.Type.PAREN_CLOSE)){
+            return true;
+        }
+        do {
+            if (!parseArgument()){
+                return false;
+            }
+        } while (match(Tokenizer.Type.COMMA));
+        return match(Tokenizer.Type.PAREN_CLOSE);
+    }
+
+    /**
+     * function: parseArgument()
+     * @return - returns the success of parsing a single numeric, boolean or string
+     * expression, one that ends at a comma, a closing parenthesis or the end of the line
+     */
+    private boolean parseArgument(){
+        int oldCur = curr;
+        if (parseNumExpression() && atArgumentEnd()) return true;
+        curr = oldCur;
+        if (parseBoolExpression() && atArgumentEnd()) return true;
+        curr = oldCur;
+        if (parseStrExpression() && atArgumentEnd()) return true;
+        curr = oldCur;
+        return false;
+    }
+
+    private boolean atArgumentEnd(){
+        return atEnd() || tokens.get(curr).type == Tokenizer.Type.COMMA
+                || tokens.get(curr).type == Tokenizer.Type.PAREN_CLOSE;
+    }
+
     // do we get rid of this?
     private boolean parseLoop(){
         if (!match(Tokenizer.Type.PAREN_OPEN) || !parseExpression() || !match(Tokenizer.Type.PAREN_CLOSE)){
@@ -518,17 +887,32 @@ public class Grammar2 {
      */
     private boolean parseExpression(){
         int oldCur = curr;
+        if (!atEnd() && tokens.get(curr).type == Tokenizer.Type.BRACKET_OPEN) { // array literal
+            if (!parseArrayLiteral() || curr != tokens.size()-1) {
+                return false;
+            }
+            if (!inCondBlock && !validateOnly) globalVariables = exec.executeArrayLiteral(tokens, globalVariables);
+            return true;
+        }
+        if (match(Tokenizer.Type.CHANNEL)) { // new channel, channel(<num_expression>)
+            if (!match(Tokenizer.Type.PAREN_OPEN) || !parseNumExpression() || !match(Tokenizer.Type.PAREN_CLOSE)
+                    || curr != tokens.size()-1) {
+                return false;
+            }
+            if (!inCondBlock && !validateOnly) globalVariables = exec.executeChannel(tokens, globalVariables);
+            return true;
+        }
         if (parseNumExpression()) { // parsing a numeric expression
             if (curr == tokens.size()-1) {
                 try {
                     // executing the numeric expression
-                    if (!inCondBlock) globalVariables = exec.executeNumExpression(tokens, globalVariables);
+                    if (!inCondBlock && !validateOnly) globalVariables = exec.executeNumExpression(tokens, globalVariables);
                     //System.out.println("Returning");
                     return true;
-                } catch (IllegalArgumentException _) {
-                    throw new IllegalArgumentException("Illegal argument in integer expression");
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Illegal argument in integer expression", e);
                 }
-            }else if (match(Tokenizer.Type.PAREN_CLOSE)&&tokens.get(0).type== Tokenizer.Type.PRINT){
+            }else if (match(Tokenizer.Type.PAREN_CLOSE)&&(tokens.get(0).type== Tokenizer.Type.PRINT||tokens.get(0).type== Tokenizer.Type.PUTS)){
                 return true;
             }
         }
@@ -540,17 +924,17 @@ public class Grammar2 {
             if (curr == tokens.size() - 1) {
                 try {
                     // executing the boolean expression with java
-                    if (!inCondBlock) globalVariables = exec.executeBoolExpression(tokens, globalVariables);
+                    if (!inCondBlock && !validateOnly) globalVariables = exec.executeBoolExpression(tokens, globalVariables);
                     //            System.out.println("Returning");
                     //System.out.println();
                     return true;
-                } catch (IllegalArgumentException _) {
-                    throw new IllegalArgumentException("Illegal argument in boolean expression");
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Illegal argument in boolean expression", e);
                 }
 
                 // evaluating the expression inside of a print or block statement
             } else if (match(Tokenizer.Type.PAREN_CLOSE)) {
-                if (tokens.get(0).type == Tokenizer.Type.PRINT) {
+                if (tokens.get(0).type == Tokenizer.Type.PRINT || tokens.get(0).type == Tokenizer.Type.PUTS) {
                     return true;
                 } else if (match(Tokenizer.Type.BRACE_OPEN) && (tokens.get(0).type == Tokenizer.Type.IF ||
                         tokens.get(0).type == Tokenizer.Type.ELIF ||
@@ -569,15 +953,15 @@ public class Grammar2 {
         if (parseInputExpression()){
             if (curr == tokens.size()-1){
                 try {
-                    if (!inCondBlock) globalVariables = exec.executeInputExpression(tokens, globalVariables);
+                    if (!inCondBlock && !validateOnly) globalVariables = exec.executeInputExpression(tokens, globalVariables);
                     //            System.out.println("Returning");
                     //System.out.println();
                     return true;
-                } catch (IllegalArgumentException _) {
-                    throw new IllegalArgumentException("Illegal Argument in input statement");
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Illegal Argument in input statement", e);
                 }
                 //return true;
-            }else if (match(Tokenizer.Type.PAREN_CLOSE)&&tokens.get(0).type== Tokenizer.Type.PRINT){
+            }else if (match(Tokenizer.Type.PAREN_CLOSE)&&(tokens.get(0).type== Tokenizer.Type.PRINT||tokens.get(0).type== Tokenizer.Type.PUTS)){
                 return true;
             }
         }
@@ -588,12 +972,12 @@ public class Grammar2 {
         if (parseStrExpression() ){
             if (curr == tokens.size()-1){
                 try {
-                    if (!inCondBlock) globalVariables = exec.executeStrExpression(tokens, globalVariables);
+                    if (!inCondBlock && !validateOnly) globalVariables = exec.executeStrExpression(tokens, globalVariables);
 //            System.out.println("Returning");
                     //System.out.println();
                     return true;
-                } catch (IllegalArgumentException _) {
-                    throw new IllegalArgumentException("Illegal argument in string expression");
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Illegal argument in string expression", e);
                 }
                 //return true;
             }else if(match(Tokenizer.Type.PAREN_CLOSE)&&(tokens.get(0).type== Tokenizer.Type.PRINT||tokens.get(0).type== Tokenizer.Type.PUTS)){
@@ -663,9 +1047,25 @@ public class Grammar2 {
             return true;
         }
 
-        // Check for a variable name
+        // Check for a variable name, an array element or a function call
         if (match(Tokenizer.Type.VAR_NAME)) {
-            return true;
+            if (!atEnd() && tokens.get(curr).type == Tokenizer.Type.BRACKET_OPEN) {
+                return parseIndex();
+            }
+            return atEnd() || tokens.get(curr).type != Tokenizer.Type.PAREN_OPEN || parseCallArgs();
+        }
+
+        // Check for the length of an array or string
+        if (match(Tokenizer.Type.LEN)) {
+            return match(Tokenizer.Type.PAREN_OPEN)
+                    && (match(Tokenizer.Type.VAR_NAME) || match(Tokenizer.Type.STRING))
+                    && match(Tokenizer.Type.PAREN_CLOSE);
+        }
+
+        // Check for a value received from a channel
+        if (match(Tokenizer.Type.RECEIVE)) {
+            return match(Tokenizer.Type.PAREN_OPEN) && match(Tokenizer.Type.VAR_NAME)
+                    && match(Tokenizer.Type.PAREN_CLOSE);
         }
 
         // Check for a parenthesized expression
@@ -755,9 +1155,9 @@ public class Grammar2 {
         }
         curr = oldCurr;
 
-        // variable representing a bool
+        // variable representing a bool, or a function returning one
         if (match(Tokenizer.Type.VAR_NAME)) {
-            return true;
+            return atEnd() || tokens.get(curr).type != Tokenizer.Type.PAREN_OPEN || parseCallArgs();
         }
 
         // parse expression in parens
@@ -856,9 +1256,15 @@ public class Grammar2 {
             return true;
         }
 
-        // Check for a variable name
+        // Check for a variable name or a function call
         if (match(Tokenizer.Type.VAR_NAME)) {
-            return true;
+            return atEnd() || tokens.get(curr).type != Tokenizer.Type.PAREN_OPEN || parseCallArgs();
+        }
+
+        // Check for a string received from a channel
+        if (match(Tokenizer.Type.RECEIVE)) {
+            return match(Tokenizer.Type.PAREN_OPEN) && match(Tokenizer.Type.VAR_NAME)
+                    && match(Tokenizer.Type.PAREN_CLOSE);
         }
 
         // Check for a parenthesized str expression
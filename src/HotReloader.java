@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * class: HotReloader
+ * Keeps a compiled script in step with its file. On a reload the new source
+ * is diffed against the old by line. Only lines whose text is new are
+ * tokenized again. Every other line reuses the tokens it had, renumbered if
+ * it moved. Brackets are rechecked on the tokens rather than the text, and
+ * only the top level statements the changed lines belong to are checked
+ * against the grammar.
+ *
+ * The new program is swapped in with a single volatile write. Runs already
+ * in progress keep the ScriptProgram they started with, which is never
+ * modified, so a reload never waits for them and never disturbs them. If
+ * the new source does not compile, the old program stays in place.
+ *
+ * Usage: try (HotReloader script = new HotReloader(path)) {
+ *            script.watch(Throwable::printStackTrace);
+ *            ... script.current().execute(context) ...
+ *        }
+ */
+public class HotReloader implements AutoCloseable {
+    private static final long SETTLE_MILLIS = 50; // editors often write a file in several steps
+    private final Path file;
+    private volatile Version version;
+    private long reloads = 0;
+    private int lastRelexed = 0;
+    private WatchService watcher;
+    private Thread watchThread;
+
+    /**
+     * class: Version
+     * One compiled revision of the file: its source lines and their tokens, which
+     * are shared with the next revision wherever the text did not change.
+     */
+    private record Version(List<String> lines, List<ArrayList<Tokenizer.Token>> tokenLines, ScriptProgram program) {
+    }
+
+    /**
+     * Constructor: compiles the file as it is now
+     * @param file - the script file
+     * @throws IOException - if the file cannot be read
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public HotReloader(Path file) throws IOException, ParseException {
+        this.file = file;
+        List<String> lines = Files.readAllLines(file);
+        List<ArrayList<Tokenizer.Token>> tokenLines = ParallelLexer.tokenizeAll(lines);
+        ScriptProgram program = new ScriptProgram(tokenLines);
+        program.validate();
+        version = new Version(lines, tokenLines, program);
+    }
+
+    /**
+     * Method: current - the latest program that compiled. Each run should call this once
+     *         and keep what it gets.
+     * @return the program
+     */
+    public ScriptProgram current() {
+        return version.program();
+    }
+
+    /**
+     * Method: reload - reads the file again and swaps in the new program if it changed
+     * @return whether the program changed
+     * @throws IOException - if the file cannot be read
+     * @throws ParseException - if a changed line does not follow the grammar; the old program is kept
+     * @throws IllegalArgumentException - if the brackets do not match or a line has an unexpected character;
+     *                                  the old program is kept
+     */
+    public synchronized boolean reload() throws IOException, ParseException {
+        return reload(Files.readAllLines(file));
+    }
+
+    /**
+     * Method: reload - swaps in a program compiled from new source, reusing the tokens of
+     *         every line whose text is unchanged
+     * @param lines - every line of the new source
+     * @return whether the program changed
+     * @throws ParseException - if a changed line does not follow the grammar; the old program is kept
+     * @throws IllegalArgumentException - if the brackets do not match or a line has an unexpected character;
+     *                                  the old program is kept
+     */
+    public synchronized boolean reload(List<String> lines) throws ParseException {
+        Version old = version;
+        if (old.lines().equals(lines)) return false;
+
+        // lines the same at both ends are reused where they are
+        int prefix = 0;
+        int maxSame = Math.min(old.lines().size(), lines.size());
+        while (prefix < maxSame && old.lines().get(prefix).equals(lines.get(prefix))) prefix++;
+        int suffix = 0;
+        while (suffix < maxSame - prefix && old.lines().get(old.lines().size() - 1 - suffix)
+                .equals(lines.get(lines.size() - 1 - suffix))) suffix++;
+
+        // in between, a line whose text was anywhere in the old middle reuses those tokens
+        HashMap<String, ArrayList<Tokenizer.Token>> oldMiddle = new HashMap<>();
+        for (int i = prefix; i < old.lines().size() - suffix; i++) {
+            oldMiddle.putIfAbsent(old.lines().get(i), old.tokenLines().get(i));
+        }
+        Tokenizer tokenizer = new Tokenizer() {
+            @Override
+            public void handleBrackets(Type type, int index, String line) {
+                // brackets are checked over the whole program below
+            }
+        };
+        List<ArrayList<Tokenizer.Token>> tokenLines = new ArrayList<>(lines.size());
+        tokenLines.addAll(old.tokenLines().subList(0, prefix));
+        int relexed = 0;
+        for (int i = prefix; i < lines.size() - suffix; i++) {
+            ArrayList<Tokenizer.Token> reused = oldMiddle.get(lines.get(i));
+            if (reused != null) {
+                tokenLines.add(renumber(tokenizer, reused, i + 1));
+            } else {
+                tokenizer.lines = i + 1;
+                tokenLines.add(tokenizer.tokenize(lines.get(i)));
+                relexed++;
+            }
+        }
+        int shift = lines.size() - old.lines().size();
+        for (int i = old.lines().size() - suffix; i < old.lines().size(); i++) {
+            tokenLines.add(renumber(tokenizer, old.tokenLines().get(i), i + shift + 1));
+        }
+
+        int[] depths = bracketDepths(tokenLines);
+        if (depths == null) {
+            ScriptProgram.compile(lines); // throws the usual bracket error
+            throw new IllegalArgumentException("Brackets do not match");
+        }
+        ScriptProgram program = new ScriptProgram(tokenLines);
+        int first = Math.min(prefix, lines.size() - 1);
+        int last = Math.max(first, lines.size() - suffix - 1);
+        if (first >= 0) {
+            // widen to whole top level statements, including every branch of an if-elif-else chain
+            while (first > 0 && !(depths[first] == 0 && program.isResumePoint(first))) first--;
+            int end = last + 1;
+            while (end < lines.size() && !(depths[end] == 0 && program.isResumePoint(end))) end++;
+            program.validate(first, end);
+        }
+
+        version = new Version(lines, tokenLines, program);
+        reloads++;
+        lastRelexed = relexed;
+        return true;
+    }
+
+    /**
+     * Method: renumber - the tokens of a line that moved, with their line number changed
+     * @param tokenizer - any tokenizer, needed to build tokens
+     * @param tokens - the tokens of the line where it was
+     * @param line - line number where the line is now
+     * @return the same list if the line did not move, otherwise a copy
+     */
+    private static ArrayList<Tokenizer.Token> renumber(Tokenizer tokenizer, ArrayList<Tokenizer.Token> tokens, int line) {
+        if (tokens.getFirst().line == line) return tokens;
+        ArrayList<Tokenizer.Token> moved = new ArrayList<>(tokens.size());
+        for (Tokenizer.Token token : tokens) {
+            moved.add(tokenizer.new Token(token.type, token.lexeme, line));
+        }
+        return moved;
+    }
+
+    /**
+     * Method: bracketDepths - matches braces and parentheses over the tokens of a program
+     * @param tokenLines - the tokens of every line
+     * @return how many braces are open at the start of each line, or null if the brackets do not match
+     */
+    private static int[] bracketDepths(List<ArrayList<Tokenizer.Token>> tokenLines) {
+        int[] depths = new int[tokenLines.size()];
+        ArrayList<Tokenizer.Type> open = new ArrayList<>();
+        int braces = 0;
+        for (int i = 0; i < tokenLines.size(); i++) {
+            depths[i] = braces;
+            for (Tokenizer.Token token : tokenLines.get(i)) {
+                switch (token.type) {
+                    case BRACE_OPEN, PAREN_OPEN -> {
+                        open.add(token.type);
+                        if (token.type == Tokenizer.Type.BRACE_OPEN) braces++;
+                    }
+                    case BRACE_CLOSE, PAREN_CLOSE -> {
+                        Tokenizer.Type opener = (token.type == Tokenizer.Type.BRACE_CLOSE)
+                                ? Tokenizer.Type.BRACE_OPEN : Tokenizer.Type.PAREN_OPEN;
+                        if (open.isEmpty() || open.removeLast() != opener) return null;
+                        if (token.type == Tokenizer.Type.BRACE_CLOSE) braces--;
+                    }
+                    default -> { }
+                }
+            }
+        }
+        return open.isEmpty() ? depths : null;
+    }
+
+    /**
+     * Method: watch - reloads whenever the file changes, on a daemon thread, until closed
+     * @param onError - told about a change that did not compile, while the old program stays in use
+     * @throws IOException - if the directory of the file cannot be watched
+     */
+    public synchronized void watch(Consumer<Exception> onError) throws IOException {
+        if (watcher != null) return;
+        Path directory = file.toAbsolutePath().getParent();
+        Path name = file.getFileName();
+        watcher = FileSystems.getDefault().newWatchService();
+        directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        WatchService service = watcher;
+        watchThread = Thread.ofPlatform().daemon().name("pyscript-reload-" + name).start(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    Thread.sleep(SETTLE_MILLIS);
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (name.equals(event.context())) changed = true;
+                    }
+                    key.reset();
+                    if (!changed) continue;
+                    try {
+                        reload();
+                    } catch (IOException | ParseException | RuntimeException e) {
+                        onError.accept(e);
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // closed
+            }
+        });
+    }
+
+    /**
+     * Method: getReloads
+     * @return how many times a changed program has been swapped in
+     */
+    public synchronized long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * Method: getLastRelexed
+     * @return how many lines the last reload had to tokenize again
+     */
+    public synchronized int getLastRelexed() {
+        return lastRelexed;
+    }
+
+    /**
+     * Method: close - stops watching the file
+     * @throws IOException - if the watch service cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher == null) return;
+        watcher.close();
+        watchThread.interrupt();
+        watcher = null;
+        watchThread = null;
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * class: InputRecording
+ * The values a run read with iInput, sInput and bInput, in the order they
+ * were read. A context recording into one captures its input; a context
+ * replaying one reads from it instead of the console, so an interactive
+ * script runs the same way every time with no one at the keyboard.
+ *
+ * Saved as a UTF-8 text file with one value per line. Input is read a
+ * line at a time, so a value can never contain a line break.
+ */
+public class InputRecording {
+    private final List<String> values;
+
+    public InputRecording() {
+        this(new ArrayList<>());
+    }
+
+    public InputRecording(List<String> values) {
+        this.values = values;
+    }
+
+    /**
+     * Method: of - builds a recording from values given directly
+     * @param values - the values, in the order the script reads them
+     * @return the recording
+     */
+    public static InputRecording of(String... values) {
+        return new InputRecording(new ArrayList<>(Arrays.asList(values)));
+    }
+
+    /**
+     * Method: read - loads a recording saved by write
+     * @param file - the recording file
+     * @return the recording
+     * @throws IOException - if the file cannot be read
+     */
+    public static InputRecording read(File file) throws IOException {
+        return new InputRecording(new ArrayList<>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Method: write - saves the recording, one value per line
+     * @param file - file to write to
+     * @throws IOException - if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        Files.write(file.toPath(), values, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method: add - records a value that was read
+     * @param value - the line the script read
+     */
+    public void add(String value) {
+        values.add(value);
+    }
+
+    public String get(int index) {
+        return values.get(index);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public List<String> getValues() {
+        return Collections.unmodifiableList(values);
+    }
+}
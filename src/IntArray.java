@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+/**
+ * class: IntArray
+ * The value of an array variable: a list of ints kept in a primitive long[]
+ * that doubles in capacity when it fills up. Elements are read and written
+ * as plain longs, so indexing never boxes, and an element can hold any int
+ * value that fits in a long, like the arithmetic it comes from. Every
+ * access is checked against the size with one unsigned comparison.
+ *
+ * Arrays only hold ints. Lists of strings or bools are not supported: an
+ * element read is a term of numeric expressions only, and the string and
+ * bool expressions, print and the comparisons would each need an indexed
+ * term of their own. A string or bool element is a syntax error.
+ */
+public class IntArray {
+    private long[] data;
+    private int size;
+
+    public IntArray(int capacity) {
+        this.data = new long[Math.max(4, capacity)];
+    }
+
+    /**
+     * Method: of - builds an array holding a copy of the given values
+     * @param values - the elements
+     * @return the array
+     */
+    public static IntArray of(long[] values) {
+        IntArray array = new IntArray(values.length);
+        System.arraycopy(values, 0, array.data, 0, values.length);
+        array.size = values.length;
+        return array;
+    }
+
+    /**
+     * Method: get
+     * @param index - position of an element
+     * @return the element
+     * @throws IllegalArgumentException - if the index is outside the array
+     */
+    public long get(int index) {
+        if (Integer.compareUnsigned(index, size) >= 0) {
+            throw outOfBounds(index);
+        }
+        return data[index];
+    }
+
+    /**
+     * Method: set - replaces an element
+     * @param index - position of the element
+     * @param value - the new value
+     * @throws IllegalArgumentException - if the index is outside the array
+     */
+    public void set(int index, long value) {
+        if (Integer.compareUnsigned(index, size) >= 0) {
+            throw outOfBounds(index);
+        }
+        data[index] = value;
+    }
+
+    /**
+     * Method: append - adds an element to the end, doubling the storage when it is full
+     * @param value - the new element
+     * @return how many bytes the storage grew by, 0 when it did not need to grow
+     */
+    public long append(long value) {
+        long grown = 0;
+        if (size == data.length) {
+            grown = 8L * data.length;
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+        return grown;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    /**
+     * Method: toArray
+     * @return a copy of the elements
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private IllegalArgumentException outOfBounds(int index) {
+        return new IllegalArgumentException("Index " + index + " out of bounds for length " + size);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) result.append(", ");
+            result.append(data[i]);
+        }
+        return result.append(']').toString();
+    }
+}
@@ -0,0 +1,136 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * class: InterpreterMetrics
+ * Process wide counters of interpreter throughput. Each run counts into the
+ * AtomicLongs of its root ScriptContext, which its spawned blocks share, and
+ * adds the totals here once at the end, so the hot paths only touch the
+ * run's own counters and never these process wide ones. Read the counters
+ * with snapshot() or over JMX.
+ */
+public class InterpreterMetrics implements InterpreterMetricsMXBean {
+    private static final InterpreterMetrics INSTANCE = new InterpreterMetrics();
+
+    private final LongAdder linesTokenized = new LongAdder();
+    private final LongAdder tokenizeNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder programsRun = new LongAdder();
+    private final LongAdder statementsExecuted = new LongAdder();
+    private final LongAdder loopIterations = new LongAdder();
+    private final LongAdder variablesDeclared = new LongAdder();
+    private final LongAccumulator peakVariables = new LongAccumulator(Math::max, 0);
+    private final LongAdder outputChars = new LongAdder();
+
+    private InterpreterMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("PyScript:type=InterpreterMetrics"));
+        } catch (JMException e) {
+            // already registered by another class loader, the counters still work
+        }
+    }
+
+    /**
+     * Method: get
+     * @return the counters of this JVM
+     */
+    public static InterpreterMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Method: recordTokenize - adds the lines tokenized by one call to Tokenizer.tokenizeAll
+     * @param lines - how many lines were tokenized
+     * @param nanos - how long it took
+     */
+    public void recordTokenize(int lines, long nanos) {
+        linesTokenized.add(lines);
+        tokenizeNanos.add(nanos);
+    }
+
+    /**
+     * Method: recordRun - adds the counts of one finished run
+     * @param context - the context the program ran in
+     * @param parseNanos - time spent in Grammar2.parse on the top level lines, which
+     *                   includes executing them since the two happen together
+     * @param variables - how many variables the program ended with
+     */
+    public void recordRun(ScriptContext context, long parseNanos, int variables) {
+        programsRun.increment();
+        this.parseNanos.add(parseNanos);
+        statementsExecuted.add(context.getStatementsExecuted());
+        loopIterations.add(context.getLoopIterations());
+        outputChars.add(context.getOutputChars());
+        variablesDeclared.add(variables);
+        peakVariables.accumulate(variables);
+    }
+
+    /**
+     * Method: snapshot - reads every counter at once
+     * @return map of counter name to value, in a fixed order
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        snapshot.put("linesTokenized", getLinesTokenized());
+        snapshot.put("tokenizeNanos", getTokenizeNanos());
+        snapshot.put("parseNanos", getParseNanos());
+        snapshot.put("programsRun", getProgramsRun());
+        snapshot.put("statementsExecuted", getStatementsExecuted());
+        snapshot.put("loopIterations", getLoopIterations());
+        snapshot.put("variablesDeclared", getVariablesDeclared());
+        snapshot.put("peakVariables", getPeakVariables());
+        snapshot.put("outputChars", getOutputChars());
+        return snapshot;
+    }
+
+    @Override
+    public long getLinesTokenized() {
+        return linesTokenized.sum();
+    }
+
+    @Override
+    public long getTokenizeNanos() {
+        return tokenizeNanos.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long getProgramsRun() {
+        return programsRun.sum();
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return statementsExecuted.sum();
+    }
+
+    @Override
+    public long getLoopIterations() {
+        return loopIterations.sum();
+    }
+
+    @Override
+    public long getVariablesDeclared() {
+        return variablesDeclared.sum();
+    }
+
+    @Override
+    public long getPeakVariables() {
+        return peakVariables.get();
+    }
+
+    @Override
+    public long getOutputChars() {
+        return outputChars.sum();
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * interface: InterpreterMetricsMXBean
+ * The interpreter counters as seen over JMX, registered as
+ * PyScript:type=InterpreterMetrics. All counts are totals since the JVM started.
+ */
+public interface InterpreterMetricsMXBean {
+    long getLinesTokenized();
+    long getTokenizeNanos();
+    long getParseNanos();
+    long getProgramsRun();
+    long getStatementsExecuted();
+    long getLoopIterations();
+    long getVariablesDeclared();
+    long getPeakVariables();
+    long getOutputChars();
+}
@@ -0,0 +1,300 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class: InterpreterSnapshot
+ * The state of a PyScript program stopped between two top level lines:
+ * every variable, the functions declared so far and the line to carry on
+ * from. Functions are saved as the line of their def header and declared
+ * again from the source when the snapshot is restored. Written to a small binary
+ * file, a snapshot lets a fresh JVM skip the start of a script (filling
+ * tables in loops, for example) and go straight to the rest of it. A
+ * snapshot only restores against the exact source it was taken from.
+ *
+ * Layout (big endian):
+ *   int magic "PYSS", int format version, UTF source hash, int next line,
+ *   int variable count, and per variable: UTF name, UTF type, byte value kind
+ *   and the value, then int function count and per function its UTF name
+ *   and int header line. The value kinds are:
+ *     'I' an int that fits in a Java int, written as an int
+ *     'L' an int that fits in a long, written as a long
+ *     'N' a bigger int, written as an int byte length followed by the
+ *         two's complement bytes of BigInteger.toByteArray
+ *     'B' a bool, written as a boolean
+ *     'S' a string, written as an int byte length followed by UTF-8 bytes
+ *     'A' an array, written as an int size followed by the elements as longs
+ *
+ * Usage: java InterpreterSnapshot <script file> <line> <snapshot file>
+ * runs the script up to (not including) the given line and writes the snapshot.
+ */
+public class InterpreterSnapshot {
+    private static final int MAGIC = 0x50595353;
+    private static final int FORMAT_VERSION = 3;
+
+    private final String sourceHash;
+    private final int nextLine;
+    private final HashMap<String, HashMap<String, Object>> variables;
+    private final HashMap<String, Integer> functionLines;
+
+    public InterpreterSnapshot(String sourceHash, int nextLine, HashMap<String, HashMap<String, Object>> variables,
+                               HashMap<String, Integer> functionLines) {
+        this.sourceHash = sourceHash;
+        this.nextLine = nextLine;
+        this.variables = variables;
+        this.functionLines = functionLines;
+    }
+
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length != 3) {
+            System.err.println("Usage: java InterpreterSnapshot <script file> <line> <snapshot file>");
+            System.exit(2);
+        }
+        List<String> lines = ScriptRunner.readLines(args[0]);
+        InterpreterSnapshot snapshot = capture(lines, Integer.parseInt(args[1]) - 1, new ScriptContext());
+        snapshot.write(new File(args[2]));
+        System.err.println("Wrote " + args[2] + " with " + snapshot.variables.size() + " variables");
+    }
+
+    /**
+     * Method: capture - runs the start of a program and snapshots its state
+     * @param lines - every line of the program
+     * @param nextLine - index of the line to stop before; must not be inside a block
+     * @param context - the input and output the start of the program uses
+     * @return the snapshot
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public static InterpreterSnapshot capture(List<String> lines, int nextLine, ScriptContext context)
+            throws ParseException {
+        ScriptProgram program = ScriptProgram.compile(lines);
+        HashMap<String, HashMap<String, Object>> variables =
+                program.execute(context, new HashMap<>(), 0, nextLine);
+        HashMap<String, Integer> functionLines = new HashMap<>();
+        for (ScriptFunction function : context.getFunctions().values()) {
+            functionLines.put(function.name, function.line);
+        }
+        return new InterpreterSnapshot(ScriptCache.hash(lines), nextLine, variables, functionLines);
+    }
+
+    /**
+     * Method: resume - runs the rest of a program from this snapshot
+     * @param lines - every line of the program, the same as when the snapshot was taken
+     * @param context - the input and output the rest of the program uses
+     * @return globalVariables - the variables left at the end of the program
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public HashMap<String, HashMap<String, Object>> resume(List<String> lines, ScriptContext context)
+            throws ParseException {
+        if (!sourceHash.equals(ScriptCache.hash(lines))) {
+            throw new IllegalArgumentException("Snapshot was taken from a different version of the script");
+        }
+        ScriptProgram program = ScriptProgram.compile(lines);
+        for (int line : functionLines.values()) {
+            declareFunction(program, line - 1, context);
+        }
+        HashMap<String, HashMap<String, Object>> restored = copyVariables();
+        for (HashMap<String, Object> varData : restored.values()) {
+            context.chargeVariable(null, varData.get("val"), true); // memory limits cover restored variables too
+        }
+        return program.execute(context, restored, nextLine, lines.size());
+    }
+
+    /**
+     * Method: declareFunction - runs a def block again so its function is declared
+     * @param program - the compiled program
+     * @param header - index of the line of the def header
+     * @param context - the run to declare the function in
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    private static void declareFunction(ScriptProgram program, int header, ScriptContext context)
+            throws ParseException {
+        List<? extends List<Tokenizer.Token>> tokenLines = program.getTokenLines();
+        Grammar2 grammar = new Grammar2(context);
+        int open = 0;
+        int line = header;
+        do {
+            for (Tokenizer.Token token : tokenLines.get(line)) {
+                if (token.type == Tokenizer.Type.BRACE_OPEN) open++;
+                else if (token.type == Tokenizer.Type.BRACE_CLOSE) open--;
+            }
+            grammar.addTokens(tokenLines.get(line));
+            grammar.parse();
+            line++;
+        } while (open > 0);
+    }
+
+    public int getNextLine() {
+        return nextLine;
+    }
+
+    public HashMap<String, HashMap<String, Object>> getVariables() {
+        return copyVariables();
+    }
+
+    /**
+     * Method: copyVariables - copies the variables so a run cannot change the snapshot
+     * @return a copy of every variable
+     */
+    private HashMap<String, HashMap<String, Object>> copyVariables() {
+        HashMap<String, HashMap<String, Object>> copy = new HashMap<>();
+        for (Map.Entry<String, HashMap<String, Object>> variable : variables.entrySet()) {
+            copy.put(variable.getKey(), new HashMap<>(variable.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Method: write - writes the snapshot, replacing the file in one step
+     * @param file - file to write to
+     * @throws IOException - if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(sourceHash);
+            out.writeInt(nextLine);
+            out.writeInt(variables.size());
+            for (Map.Entry<String, HashMap<String, Object>> variable : variables.entrySet()) {
+                out.writeUTF(variable.getKey());
+                out.writeUTF((String) variable.getValue().get("type"));
+                writeValue(out, variable.getValue().get("val"));
+            }
+            out.writeInt(functionLines.size());
+            for (Map.Entry<String, Integer> function : functionLines.entrySet()) {
+                out.writeUTF(function.getKey());
+                out.writeInt(function.getValue());
+            }
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        }
+    }
+
+    /**
+     * Method: read - reads a snapshot file
+     * @param file - the snapshot file
+     * @return the snapshot
+     * @throws IOException - if the file cannot be read or is not a snapshot of this format version
+     */
+    public static InterpreterSnapshot read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a snapshot of format version " + FORMAT_VERSION);
+            }
+            String sourceHash = in.readUTF();
+            int nextLine = in.readInt();
+            int count = in.readInt();
+            HashMap<String, HashMap<String, Object>> variables = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                HashMap<String, Object> varData = new HashMap<>();
+                varData.put("type", in.readUTF());
+                varData.put("val", readValue(in, file.length()));
+                variables.put(name, varData);
+            }
+            HashMap<String, Integer> functionLines = new HashMap<>();
+            int functions = in.readInt();
+            for (int i = 0; i < functions; i++) {
+                functionLines.put(in.readUTF(), in.readInt());
+            }
+            return new InterpreterSnapshot(sourceHash, nextLine, variables, functionLines);
+        }
+    }
+
+    /**
+     * Method: writeValue - writes a value with a byte saying what kind it is
+     */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Integer number) {
+            out.writeByte('I');
+            out.writeInt(number);
+        } else if (value instanceof Long number) {
+            out.writeByte('L');
+            out.writeLong(number);
+        } else if (value instanceof BigInteger number) {
+            byte[] bytes = number.toByteArray();
+            out.writeByte('N');
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte('B');
+            out.writeBoolean(bool);
+        } else if (value instanceof String string) {
+            // writeUTF is limited to 64KB, strings built with @ can be longer
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeByte('S');
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof IntArray array) {
+            out.writeByte('A');
+            out.writeInt(array.size());
+            for (long element : array.toArray()) out.writeLong(element);
+        } else {
+            throw new IllegalArgumentException("Cannot snapshot a value of type " + value.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Method: readValue - reads a value written by writeValue
+     * @param in - the snapshot, at the value's kind byte
+     * @param fileLength - length of the whole file, which no value can be longer than
+     */
+    private static Object readValue(DataInputStream in, long fileLength) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case 'I':
+                return in.readInt();
+            case 'L':
+                return in.readLong();
+            case 'N':
+                byte[] magnitude = new byte[readLength(in, 1, 1, fileLength)];
+                in.readFully(magnitude);
+                return new BigInteger(magnitude);
+            case 'B':
+                return in.readBoolean();
+            case 'S':
+                byte[] bytes = new byte[readLength(in, 0, 1, fileLength)];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case 'A':
+                long[] elements = new long[readLength(in, 0, 8, fileLength)];
+                for (int i = 0; i < elements.length; i++) elements[i] = in.readLong();
+                return IntArray.of(elements);
+            default:
+                throw new IOException("Unknown value kind in snapshot: " + kind);
+        }
+    }
+
+    /**
+     * Method: readLength - reads the length of a value, checking it before anything that size is allocated
+     * @param in - the snapshot, at the length
+     * @param least - the smallest length the value can have
+     * @param bytesEach - bytes each unit of the length takes in the file
+     * @param fileLength - length of the whole file
+     * @return the length
+     * @throws IOException - if the length could not be right for this file
+     */
+    private static int readLength(DataInputStream in, int least, int bytesEach, long fileLength) throws IOException {
+        int length = in.readInt();
+        if (length < least || (long) length * bytesEach > fileLength) {
+            throw new IOException("Corrupt snapshot, bad value length " + length);
+        }
+        return length;
+    }
+}
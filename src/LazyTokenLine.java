@@ -0,0 +1,66 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+
+/**
+ * class: LazyTokenLine
+ * The tokens of one source line, tokenized the first time they are read.
+ * ScriptProgram.compileLazy uses it for every line inside a block, so the
+ * body of a branch or loop that never runs is never tokenized. Grammar2
+ * collects a lazy line into its block without reading it when the line is
+ * deeper than the lines that Grammar2 parses itself.
+ */
+public class LazyTokenLine extends AbstractList<Tokenizer.Token> {
+    public final String text;
+    public final int line;
+    public final int minDepth; // fewest blocks the line is inside of at any point on it
+    private volatile ArrayList<Tokenizer.Token> tokens;
+
+    public LazyTokenLine(String text, int line, int minDepth) {
+        this.text = text;
+        this.line = line;
+        this.minDepth = minDepth;
+    }
+
+    /**
+     * Method: isTokenized
+     * @return whether the line has been tokenized yet
+     */
+    public boolean isTokenized() {
+        return tokens != null;
+    }
+
+    /**
+     * Method: tokens - tokenizes the line on first use. compileLazy has already checked
+     *         the brackets of the whole program, so only an unexpected character can fail here.
+     * @return the tokens of the line
+     */
+    private ArrayList<Tokenizer.Token> tokens() {
+        ArrayList<Tokenizer.Token> result = tokens;
+        if (result == null) {
+            synchronized (this) {
+                result = tokens;
+                if (result == null) {
+                    Tokenizer tokenizer = new Tokenizer() {
+                        @Override
+                        public void handleBrackets(Type type, int index, String line) {
+                        }
+                    };
+                    tokenizer.lines = line;
+                    result = tokenizer.tokenize(text);
+                    tokens = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Tokenizer.Token get(int index) {
+        return tokens().get(index);
+    }
+
+    @Override
+    public int size() {
+        return tokens().size();
+    }
+}
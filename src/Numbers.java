@@ -0,0 +1,103 @@
+import java.math.BigInteger;
+
+/**
+ * class: Numbers
+ * How the value of an int variable is held. Arithmetic is done on Java longs
+ * and checked for overflow; a result that does not fit in a long becomes a
+ * BigInteger, and goes back to a long as soon as it fits again. A stored
+ * value is boxed in the smallest of Integer, Long and BigInteger that holds
+ * it, so small numbers keep the boxes they always had.
+ */
+public class Numbers {
+    private Numbers() {
+    }
+
+    /**
+     * Method: isInt
+     * @param value - any value
+     * @return whether the value is held by an int variable
+     */
+    public static boolean isInt(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof BigInteger;
+    }
+
+    /**
+     * Method: box
+     * @param value - a number
+     * @return the number as an Integer if it fits in one, otherwise as a Long
+     */
+    public static Object box(long value) {
+        return (value == (int) value) ? Integer.valueOf((int) value) : Long.valueOf(value);
+    }
+
+    /**
+     * Method: box
+     * @param value - a number
+     * @return the number as an Integer or Long if it fits in one, otherwise the BigInteger itself
+     */
+    public static Object box(BigInteger value) {
+        return fitsLong(value) ? box(value.longValue()) : value;
+    }
+
+    /**
+     * Method: fitsLong
+     * @param value - a number
+     * @return whether the number fits in a long
+     */
+    public static boolean fitsLong(BigInteger value) {
+        return value.bitLength() < 64;
+    }
+
+    /**
+     * Method: toBig
+     * @param value - an Integer, Long or BigInteger
+     * @return the number as a BigInteger
+     */
+    public static BigInteger toBig(Object value) {
+        if (value instanceof BigInteger big) return big;
+        return BigInteger.valueOf(((Number) value).longValue());
+    }
+
+    /**
+     * Method: parse - reads a number of any size
+     * @param text - decimal digits, with an optional sign
+     * @return the number, boxed as by box
+     * @throws NumberFormatException - if the text is not a number
+     */
+    public static Object parse(String text) {
+        try {
+            return box(Long.parseLong(text));
+        } catch (NumberFormatException e) {
+            return box(new BigInteger(text));
+        }
+    }
+
+    /**
+     * Method: toInt - narrows a number that is used as an index or a count
+     * @param value - the number, if it fits in a long
+     * @param big - the number, if it does not, otherwise null
+     * @param what - what the number is used as, for the error
+     * @return the number as an int
+     * @throws IllegalArgumentException - if the number does not fit in an int
+     */
+    public static int toInt(long value, BigInteger big, String what) {
+        if (big != null || value != (int) value) {
+            throw new IllegalArgumentException(what + " is too large: " + (big != null ? big : value));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Method: compare
+     * @param left - the left number as a BigInteger, or null if it fits in leftLong
+     * @param leftLong - the left number if it fits in a long
+     * @param right - the right number as a BigInteger, or null if it fits in rightLong
+     * @param rightLong - the right number if it fits in a long
+     * @return negative, zero or positive as the left number is less than, equal to or greater than the right
+     */
+    public static int compare(BigInteger left, long leftLong, BigInteger right, long rightLong) {
+        if (left == null && right == null) return Long.compare(leftLong, rightLong);
+        return (left != null ? left : BigInteger.valueOf(leftLong))
+                .compareTo(right != null ? right : BigInteger.valueOf(rightLong));
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * class: ParallelLexer
+ * Tokenizes a large program by splitting its lines into chunks and
+ * tokenizing the chunks in parallel on the common fork/join pool. The only
+ * state carried from one line to the next is the line counter and the
+ * bracket stack, so every chunk records a summary of its brackets instead:
+ * the closers it could not match itself, the openers it leaves open and its
+ * first error. Merging the summaries in order gives exactly the error (or
+ * lack of one) that Tokenizer.tokenizeAll reports for the whole program.
+ */
+public class ParallelLexer {
+    // below this many lines a single Tokenizer is faster than splitting
+    public static final int MIN_PARALLEL_LINES = 512;
+    private static final int MIN_CHUNK_LINES = 128;
+
+    /**
+     * class: Bracket
+     * A bracket token and where it was found, enough to rebuild its error message
+     */
+    private static class Bracket {
+        final Tokenizer.Type type;
+        final int line;
+        final int index;
+        final String text;
+
+        Bracket(Tokenizer.Type type, int line, int index, String text) {
+            this.type = type;
+            this.line = line;
+            this.index = index;
+            this.text = text;
+        }
+    }
+
+    /**
+     * class: ChunkTokenizer
+     * Tokenizer for one chunk of lines. Instead of failing on a closer with no
+     * opener, it records the closer for the merge, since the opener may be in
+     * an earlier chunk.
+     */
+    private static class ChunkTokenizer extends Tokenizer {
+        final List<Bracket> unmatchedClosers = new ArrayList<>();
+        final List<Bracket> open = new ArrayList<>();
+        Bracket mismatch;               // closer that does not match an opener of this chunk
+        IllegalArgumentException error; // unexpected character
+        final List<ArrayList<Token>> tokenLines = new ArrayList<>();
+
+        ChunkTokenizer(int firstLine) {
+            lines = firstLine;
+        }
+
+        @Override
+        public void handleBrackets(Type type, int index, String line) {
+            if (mismatch != null) return; // tokenizing stops at the end of this line
+            switch (type) {
+                case BRACE_OPEN, PAREN_OPEN -> open.add(new Bracket(type, lines, index, line));
+                case BRACE_CLOSE, PAREN_CLOSE -> {
+                    Type opener = (type == Type.BRACE_CLOSE) ? Type.BRACE_OPEN : Type.PAREN_OPEN;
+                    if (open.isEmpty()) {
+                        unmatchedClosers.add(new Bracket(type, lines, index, line));
+                    } else if (open.getLast().type == opener) {
+                        open.removeLast();
+                    } else {
+                        mismatch = new Bracket(type, lines, index, line);
+                    }
+                }
+                default -> { }
+            }
+        }
+
+        /**
+         * Method: lex - tokenizes the chunk, stopping at its first error
+         * @param chunk - the lines of the chunk
+         */
+        void lex(List<String> chunk) {
+            for (String line : chunk) {
+                try {
+                    tokenLines.add(tokenize(line));
+                } catch (IllegalArgumentException e) {
+                    error = e;
+                    return;
+                }
+                if (mismatch != null) return;
+                lines++;
+            }
+        }
+    }
+
+    /**
+     * Method: tokenizeAll - parallel version of Tokenizer.tokenizeAll, with the same
+     *         result and the same errors
+     * @param inputLines - every line of the program
+     * @return the tokens of every line, in order
+     */
+    public static List<ArrayList<Tokenizer.Token>> tokenizeAll(List<String> inputLines) {
+        if (inputLines.size() < MIN_PARALLEL_LINES) {
+            return new Tokenizer().tokenizeAll(inputLines);
+        }
+        ScriptEvents.Tokenize event = new ScriptEvents.Tokenize();
+        event.begin();
+        long start = System.nanoTime();
+
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int chunkLines = Math.max(MIN_CHUNK_LINES, (inputLines.size() + 4 * parallelism - 1) / (4 * parallelism));
+        int chunkCount = (inputLines.size() + chunkLines - 1) / chunkLines;
+        List<ChunkTokenizer> chunks = IntStream.range(0, chunkCount).parallel().mapToObj(i -> {
+            int from = i * chunkLines;
+            ChunkTokenizer tokenizer = new ChunkTokenizer(from + 1);
+            tokenizer.lex(inputLines.subList(from, Math.min(inputLines.size(), from + chunkLines)));
+            return tokenizer;
+        }).toList();
+
+        // merge the bracket summaries in order, as if one Tokenizer had seen every line
+        List<Bracket> open = new ArrayList<>();
+        List<ArrayList<Tokenizer.Token>> tokenLines = new ArrayList<>(inputLines.size());
+        for (ChunkTokenizer chunk : chunks) {
+            for (Bracket closer : chunk.unmatchedClosers) {
+                Tokenizer.Type opener = (closer.type == Tokenizer.Type.BRACE_CLOSE)
+                        ? Tokenizer.Type.BRACE_OPEN : Tokenizer.Type.PAREN_OPEN;
+                if (open.isEmpty() || open.getLast().type != opener) {
+                    throwBracketError(closer);
+                }
+                open.removeLast();
+            }
+            if (chunk.mismatch != null) throwBracketError(chunk.mismatch);
+            if (chunk.error != null) throw chunk.error;
+            open.addAll(chunk.open);
+            tokenLines.addAll(chunk.tokenLines);
+        }
+
+        InterpreterMetrics.get().recordTokenize(inputLines.size(), System.nanoTime() - start);
+        event.lines = inputLines.size();
+        event.commit();
+
+        // let a Tokenizer holding the same stack report anything left open
+        Tokenizer last = new Tokenizer();
+        for (Bracket bracket : open) {
+            last.handleBrackets(bracket.type, bracket.index, bracket.text);
+        }
+        last.checkUnclosed();
+        return tokenLines;
+    }
+
+    /**
+     * Method: throwBracketError - throws the error a Tokenizer gives for a closer with no opener
+     * @param closer - the closing bracket
+     */
+    private static void throwBracketError(Bracket closer) {
+        Tokenizer tokenizer = new Tokenizer();
+        tokenizer.lines = closer.line;
+        tokenizer.handleBrackets(closer.type, closer.index, closer.text);
+        throw new IllegalStateException("Closer should not have matched: " + closer.type);
+    }
+}
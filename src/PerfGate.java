@@ -0,0 +1,175 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Scanner;
+
+/**
+ * class: PerfGate
+ * Performance regression check. Times tokenizing, parsing and executing a
+ * fixed set of generated workloads, then compares each time with a stored
+ * baseline. Each workload stresses one dimension: many lines, deep nesting,
+ * many variables, or long @ chains. The check fails when any benchmark is
+ * slower than its baseline by more than the tolerance, or when a benchmark
+ * fails to run at all.
+ *
+ * Baselines depend on the machine, so record one with --update on the
+ * machine that runs the check, and record it again when a change is meant
+ * to be slower.
+ *
+ * Usage: java PerfGate [-b baseline file] [-t tolerance] [-w warmup ms] [-m iteration ms] [-i iterations] [--update]
+ * Exits with 0 when every benchmark is within the tolerance, 1 on a regression and 2 when there is no baseline.
+ */
+public class PerfGate {
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+    // name, lines, depth, variables, chain length, loop count
+    private static final Object[][] WORKLOADS = {
+            {"lines", 5000, 2, 30, 3, 2},
+            {"nesting", 1000, 12, 30, 3, 2},
+            {"variables", 2000, 3, 600, 3, 2},
+            {"concat", 1000, 2, 30, 100, 2}
+    };
+
+    public static void main(String[] args) throws IOException {
+        File baselineFile = new File("perf-baseline.properties");
+        double tolerance = 0.20;
+        long warmupMillis = 500, measureMillis = 500;
+        int iterations = 3;
+        boolean update = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-b" -> baselineFile = new File(args[++i]);
+                case "-t" -> tolerance = Double.parseDouble(args[++i]);
+                case "-w" -> warmupMillis = Long.parseLong(args[++i]);
+                case "-m" -> measureMillis = Long.parseLong(args[++i]);
+                case "-i" -> iterations = Integer.parseInt(args[++i]);
+                case "--update" -> update = true;
+                default -> {
+                    System.err.println("Usage: java PerfGate [-b baseline file] [-t tolerance] [-w warmup ms]"
+                            + " [-m iteration ms] [-i iterations] [--update]");
+                    System.exit(2);
+                }
+            }
+        }
+        if (!update && !baselineFile.exists()) {
+            System.err.println("No baseline at " + baselineFile + ", record one with --update");
+            System.exit(2);
+        }
+
+        Map<String, Double> results = run(new Benchmarks(warmupMillis, measureMillis, iterations));
+        if (update) {
+            writeBaseline(baselineFile, results);
+            System.out.println("Baseline written to " + baselineFile);
+            return;
+        }
+        System.exit(compare(readBaseline(baselineFile), results, tolerance) ? 0 : 1);
+    }
+
+    /**
+     * Method: run - times every phase of every workload
+     * @param benchmarks - the harness that does the timing
+     * @return mean nanoseconds per call of each benchmark by name, NaN for one that failed
+     */
+    public static Map<String, Double> run(Benchmarks benchmarks) {
+        Map<String, Double> results = new LinkedHashMap<>();
+        System.out.printf("%-36s %14s %12s %14s%n", "Benchmark", "us/op", "error", "ops/s");
+        for (Object[] workload : WORKLOADS) {
+            String name = (String) workload[0];
+            List<String> lines = new WorkloadGenerator((int) workload[1], (int) workload[2], (int) workload[3],
+                    (int) workload[4], (int) workload[5], 1).generate();
+            results.put("tokenize/" + name, benchmarks.measure("tokenize/" + name, () -> {
+                Tokenizer tokenizer = new Tokenizer();
+                int count = 0;
+                for (String line : lines) {
+                    count += tokenizer.tokenize(line).size();
+                }
+                return count;
+            }));
+            ScriptProgram program = ScriptProgram.compile(lines);
+            results.put("parse/" + name, benchmarks.measure("parse/" + name, () -> {
+                program.validate();
+                return program;
+            }));
+            results.put("execute/" + name, benchmarks.measure("execute/" + name,
+                    () -> program.execute(new ScriptContext(new Scanner(""), NO_OUTPUT))));
+        }
+        return results;
+    }
+
+    /**
+     * Method: compare - prints each result next to its baseline
+     * @param baseline - nanoseconds per call of each benchmark, as recorded
+     * @param results - nanoseconds per call of each benchmark, as measured now
+     * @param tolerance - how much slower than the baseline a benchmark may be, 0.2 for 20%
+     * @return whether every benchmark ran and was within the tolerance
+     */
+    public static boolean compare(Map<String, Double> baseline, Map<String, Double> results, double tolerance) {
+        boolean passed = true;
+        System.out.println();
+        System.out.printf("%-36s %14s %14s %9s%n", "Benchmark", "baseline us", "now us", "change");
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            String name = result.getKey();
+            double now = result.getValue();
+            Double before = baseline.get(name);
+            if (Double.isNaN(now)) {
+                System.out.printf("%-36s %14s %14s %9s  FAILED%n", name, "", "", "");
+                passed = false;
+            } else if (before == null) {
+                System.out.printf("%-36s %14s %14.3f %9s  no baseline%n", name, "", now / 1e3, "");
+            } else {
+                double change = now / before - 1;
+                boolean regressed = change > tolerance;
+                System.out.printf("%-36s %14.3f %14.3f %+8.1f%%%s%n", name, before / 1e3, now / 1e3,
+                        change * 100, regressed ? "  REGRESSION" : "");
+                if (regressed) passed = false;
+            }
+        }
+        System.out.println(passed ? "Within " + Math.round(tolerance * 100) + "% of the baseline"
+                : "Slower than the baseline by more than " + Math.round(tolerance * 100) + "%, or failed");
+        return passed;
+    }
+
+    /**
+     * Method: readBaseline
+     * @param file - a baseline written by writeBaseline
+     * @return nanoseconds per call of each benchmark by name
+     * @throws IOException - if the file cannot be read
+     */
+    public static Map<String, Double> readBaseline(File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            properties.load(reader);
+        }
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            baseline.put(name, Double.parseDouble(properties.getProperty(name)));
+        }
+        return baseline;
+    }
+
+    /**
+     * Method: writeBaseline - saves results as the new baseline, leaving out benchmarks that failed
+     * @param file - file to write to
+     * @param results - nanoseconds per call of each benchmark by name
+     * @throws IOException - if the file cannot be written
+     */
+    public static void writeBaseline(File file, Map<String, Double> results) throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            if (!Double.isNaN(result.getValue())) {
+                properties.setProperty(result.getKey(), Double.toString(result.getValue()));
+            }
+        }
+        try (Writer writer = new FileWriter(file)) {
+            properties.store(writer, "PerfGate baseline, nanoseconds per call");
+        }
+    }
+}
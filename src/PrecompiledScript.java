@@ -0,0 +1,242 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * class: PrecompiledScript
+ * Reads and writes the .pysc precompiled format, the token lines of a
+ * ScriptProgram stored next to its source so a fresh JVM can run it
+ * without going through the Tokenizer. Files are read through a memory
+ * mapped buffer and are only used when they still match their source;
+ * one that cannot be made sense of is treated as out of date.
+ *
+ * Layout (big endian):
+ *   int magic "PYSC", int format version,
+ *   long source last modified, long source length, string source hash,
+ *   int type count, type names,
+ *   int string count, strings (every distinct lexeme once),
+ *   int line count, and per line: int token count, per token: byte type, int string.
+ * A string is an int byte length followed by its UTF-8 bytes.
+ *
+ * Usage: java PrecompiledScript <script file>...
+ */
+public class PrecompiledScript {
+    public static final String EXTENSION = ".pysc";
+    private static final int MAGIC = 0x50595343;
+    private static final int FORMAT_VERSION = 1;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java PrecompiledScript <script file>...");
+            System.exit(2);
+        }
+        for (String arg : args) {
+            File source = new File(arg);
+            long modified = source.lastModified();
+            long length = source.length();
+            List<String> lines = ScriptRunner.readLines(arg);
+            write(ScriptProgram.compile(lines), source, modified, length, ScriptCache.hash(lines));
+            System.out.println("Wrote " + compiledFile(source));
+        }
+    }
+
+    /**
+     * Method: compiledFile - the precompiled file that belongs to a source file
+     * @param source - the .txt source of the script
+     * @return the .pysc file next to it
+     */
+    public static File compiledFile(File source) {
+        return new File(source.getPath() + EXTENSION);
+    }
+
+    /**
+     * Method: loadOrCompile - loads the precompiled form of a script if it is up to date,
+     *         otherwise compiles the source and rewrites the precompiled file.
+     * @param source - the .txt source of the script
+     * @return the compiled program
+     * @throws IOException - if the source cannot be read
+     */
+    public static ScriptProgram loadOrCompile(File source) throws IOException {
+        File compiled = compiledFile(source);
+        if (compiled.exists()) {
+            ScriptProgram program = read(compiled, source);
+            if (program != null) return program;
+        }
+        // taken before the source is read, so a change made while compiling is never stamped as seen
+        long modified = source.lastModified();
+        long length = source.length();
+        List<String> lines = ScriptRunner.readLines(source.getPath());
+        ScriptProgram program = ScriptProgram.compile(lines);
+        try {
+            write(program, source, modified, length, ScriptCache.hash(lines));
+        } catch (IOException e) {
+            // a read only directory only costs us the next cold start
+            System.err.println("Could not write " + compiled + ": " + e.getMessage());
+        }
+        return program;
+    }
+
+    /**
+     * Method: write - writes the precompiled form of a program next to its source. The
+     *         file is written under a unique temporary name and moved into place, so
+     *         neither a reader nor another writer ever sees it half written.
+     * @param program - the compiled program
+     * @param source - the .txt source the program was compiled from
+     * @param modified - last modified time of the source, taken before it was read
+     * @param length - length of the source, taken before it was read
+     * @param hash - ScriptCache.hash of the lines the program was compiled from
+     * @throws IOException - if the file cannot be written
+     */
+    public static void write(ScriptProgram program, File source, long modified, long length, String hash)
+            throws IOException {
+        List<String> types = new ArrayList<>();
+        HashMap<Tokenizer.Type, Integer> typeIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        HashMap<String, Integer> stringIndex = new HashMap<>();
+        for (List<Tokenizer.Token> tokens : program.getTokenLines()) {
+            for (Tokenizer.Token token : tokens) {
+                if (!typeIndex.containsKey(token.type)) {
+                    typeIndex.put(token.type, types.size());
+                    types.add(token.type.name());
+                }
+                if (!stringIndex.containsKey(token.lexeme)) {
+                    stringIndex.put(token.lexeme, strings.size());
+                    strings.add(token.lexeme);
+                }
+            }
+        }
+
+        Path compiled = compiledFile(source).getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(compiled.getParent(), compiled.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(modified);
+                out.writeLong(length);
+                writeString(out, hash);
+                out.writeInt(types.size());
+                for (String type : types) writeString(out, type);
+                out.writeInt(strings.size());
+                for (String string : strings) writeString(out, string);
+                out.writeInt(program.getTokenLines().size());
+                for (List<Tokenizer.Token> tokens : program.getTokenLines()) {
+                    out.writeInt(tokens.size());
+                    for (Tokenizer.Token token : tokens) {
+                        out.writeByte(typeIndex.get(token.type));
+                        out.writeInt(stringIndex.get(token.lexeme));
+                    }
+                }
+            }
+            // a rename replaces the file in one step, so a reader sees the old file or the new one
+            try {
+                Files.move(temp, compiled, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, compiled, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp); // only still there if the write or the move failed
+        }
+    }
+
+    /**
+     * Method: read - maps a precompiled file and rebuilds its program
+     * @param compiled - the .pysc file
+     * @param source - the .txt source it should match
+     * @return the program, or null if the file is from another format version, is
+     *         out of date with its source, or is cut short or corrupted
+     * @throws IOException - if the file cannot be read
+     */
+    public static ScriptProgram read(File compiled, File source) throws IOException {
+        try (FileChannel channel = FileChannel.open(compiled.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            long modified = buffer.getLong();
+            long length = buffer.getLong();
+            String hash = readString(buffer);
+            // same timestamp and size is trusted, otherwise fall back on the hash
+            if (modified != source.lastModified() || length != source.length()) {
+                if (!hash.equals(ScriptCache.hash(ScriptRunner.readLines(source.getPath())))) {
+                    return null;
+                }
+            }
+
+            Tokenizer.Type[] types = new Tokenizer.Type[readCount(buffer, 4)];
+            for (int i = 0; i < types.length; i++) {
+                try {
+                    types[i] = Tokenizer.Type.valueOf(readString(buffer));
+                } catch (IllegalArgumentException e) {
+                    return null; // token type no longer exists, recompile
+                }
+            }
+            String[] strings = new String[readCount(buffer, 4)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            Tokenizer tokenizer = new Tokenizer();
+            int lineCount = readCount(buffer, 4);
+            List<ArrayList<Tokenizer.Token>> tokenLines = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                int tokenCount = readCount(buffer, 5);
+                ArrayList<Tokenizer.Token> tokens = new ArrayList<>(tokenCount);
+                for (int j = 0; j < tokenCount; j++) {
+                    Tokenizer.Type type = types[buffer.get() & 0xFF];
+                    tokens.add(tokenizer.new Token(type, strings[buffer.getInt()], i + 1));
+                }
+                tokenLines.add(tokens);
+            }
+            return new ScriptProgram(tokenLines);
+        } catch (RuntimeException e) {
+            return null; // a count, index or length that does not fit the file, recompile
+        }
+    }
+
+    /**
+     * Method: readCount - reads how many items follow, checking the rest of the file can hold them
+     * @param buffer - the mapped file
+     * @param bytesEach - the fewest bytes one item takes
+     * @return the count
+     * @throws BufferUnderflowException - if the count is negative or too big for the file
+     */
+    private static int readCount(MappedByteBuffer buffer, int bytesEach) {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * bytesEach > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /**
+     * Method: writeString - writes a length prefixed UTF-8 string
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Method: readString - reads a length prefixed UTF-8 string
+     */
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[readCount(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
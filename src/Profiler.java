@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class: Profiler
+ * Records how often each source line of a PyScript program runs, how much
+ * wall time and memory it takes and how many times each loop goes around.
+ * Grammar2.parse enters a frame for every line it runs and Execute enters
+ * one for every run of a conditional or loop block, so the time of a block
+ * is split between the lines inside it. Counters live in plain arrays
+ * indexed by line number, which keeps the cost per line small enough to
+ * leave profiling on outside of development.
+ *
+ * A Profiler belongs to a single run and is not thread safe.
+ */
+public class Profiler {
+    private static final int MAX_DEPTH = 4096;
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<String> source;
+    private final boolean collapseStacks;
+
+    // per line totals, indexed by line number
+    private long[] counts = new long[64];
+    private long[] selfNanos = new long[64];
+    private long[] totalNanos = new long[64];
+    private long[] selfBytes = new long[64];
+    private long[] loopIterations = new long[64];
+
+    // frames of the lines currently running
+    private final int[] stackLines = new int[MAX_DEPTH];
+    private final long[] stackStart = new long[MAX_DEPTH];
+    private final long[] stackStartBytes = new long[MAX_DEPTH];
+    private final long[] stackChildNanos = new long[MAX_DEPTH];
+    private final long[] stackChildBytes = new long[MAX_DEPTH];
+    private int depth = 0;
+
+    private final HashMap<String, Long> collapsed = new HashMap<>();
+
+    /**
+     * Constructor: builds a profiler
+     * @param source - the lines of the program, used to print each line in the report (may be null)
+     * @param collapseStacks - whether to also record stacks for a flame graph
+     */
+    public Profiler(List<String> source, boolean collapseStacks) {
+        this.source = source;
+        this.collapseStacks = collapseStacks;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+            this.threads = sunBean;
+        } else {
+            this.threads = null;
+        }
+    }
+
+    /**
+     * Method: enter - starts a frame for a line
+     * @param line - the line number that starts running
+     */
+    public void enter(int line) {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Profiler stack is deeper than " + MAX_DEPTH);
+        }
+        grow(line);
+        counts[line]++;
+        stackLines[depth] = line;
+        stackChildNanos[depth] = 0;
+        stackChildBytes[depth] = 0;
+        stackStartBytes[depth] = allocatedBytes();
+        stackStart[depth] = System.nanoTime();
+        depth++;
+    }
+
+    /**
+     * Method: exit - ends the innermost frame and adds its time to its line
+     */
+    public void exit() {
+        long now = System.nanoTime();
+        long bytes = allocatedBytes();
+        depth--;
+        int line = stackLines[depth];
+        long elapsed = now - stackStart[depth];
+        long allocated = bytes - stackStartBytes[depth];
+        long self = elapsed - stackChildNanos[depth];
+        totalNanos[line] += elapsed;
+        selfNanos[line] += self;
+        selfBytes[line] += allocated - stackChildBytes[depth];
+        if (depth > 0) {
+            stackChildNanos[depth - 1] += elapsed;
+            stackChildBytes[depth - 1] += allocated;
+        }
+        if (collapseStacks) {
+            collapsed.merge(stackKey(), self, Long::sum);
+        }
+    }
+
+    /**
+     * Method: loopIteration - counts one time around a loop
+     * @param line - the line number of the loop's while statement
+     */
+    public void loopIteration(int line) {
+        grow(line);
+        loopIterations[line]++;
+    }
+
+    /**
+     * Method: getCount
+     * @param line - a line number
+     * @return how many times the line ran
+     */
+    public long getCount(int line) {
+        return (line < counts.length) ? counts[line] : 0;
+    }
+
+    /**
+     * Method: getSelfNanos
+     * @param line - a line number
+     * @return wall time spent on the line itself, not counting the lines of a block it ran
+     */
+    public long getSelfNanos(int line) {
+        return (line < selfNanos.length) ? selfNanos[line] : 0;
+    }
+
+    /**
+     * Method: getLoopIterations
+     * @param line - the line number of a while statement
+     * @return how many times the loop went around
+     */
+    public long getLoopIterations(int line) {
+        return (line < loopIterations.length) ? loopIterations[line] : 0;
+    }
+
+    /**
+     * Method: printReport - prints the lines that ran, hottest first, followed by the loops
+     * @param out - stream to print to
+     */
+    public void printReport(PrintStream out) {
+        List<Integer> ran = new ArrayList<>();
+        for (int line = 0; line < counts.length; line++) {
+            if (counts[line] > 0) ran.add(line);
+        }
+        ran.sort((a, b) -> Long.compare(selfNanos[b], selfNanos[a]));
+
+        out.println("---- PyScript profile ----");
+        out.printf("%6s %10s %12s %12s %12s  %s%n", "line", "count", "self ms", "total ms", "self KB", "source");
+        for (int line : ran) {
+            out.printf("%6d %10d %12.3f %12.3f %12.1f  %s%n", line, counts[line], selfNanos[line] / 1e6,
+                    totalNanos[line] / 1e6, selfBytes[line] / 1024.0, sourceLine(line));
+        }
+        boolean header = false;
+        for (int line = 0; line < loopIterations.length; line++) {
+            if (loopIterations[line] == 0) continue;
+            if (!header) {
+                out.printf("%n%6s %10s %12s  %s%n", "loop", "iterations", "total ms", "source");
+                header = true;
+            }
+            out.printf("%6d %10d %12.3f  %s%n", line, loopIterations[line], totalNanos[line] / 1e6, sourceLine(line));
+        }
+    }
+
+    /**
+     * Method: writeCollapsedStacks - writes the recorded stacks in the collapsed format read
+     *         by flamegraph.pl and speedscope, one "frame;frame;frame microseconds" per line
+     * @param path - file to write to
+     * @throws IOException - if the file cannot be written
+     */
+    public void writeCollapsedStacks(String path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(path)) {
+            for (Map.Entry<String, Long> stack : collapsed.entrySet()) {
+                writer.println(stack.getKey() + " " + Math.max(1, stack.getValue() / 1000));
+            }
+        }
+    }
+
+    /**
+     * Method: stackKey - names the frames currently running plus the one that just ended
+     * @return the frames from outermost to innermost, separated by ;
+     */
+    private String stackKey() {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i <= depth; i++) {
+            if (i > 0) key.append(';');
+            int line = stackLines[i];
+            key.append(line).append(": ").append(sourceLine(line).replace(';', ',').replace(' ', '_'));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Method: sourceLine
+     * @param line - a line number
+     * @return the trimmed source of the line, or an empty string if the source is unknown
+     */
+    private String sourceLine(int line) {
+        if (source == null || line < 1 || line > source.size()) return "";
+        return source.get(line - 1).trim();
+    }
+
+    /**
+     * Method: allocatedBytes
+     * @return bytes allocated by the current thread so far, or 0 if the JVM cannot tell
+     */
+    private long allocatedBytes() {
+        return (threads == null) ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Method: grow - makes sure the per line arrays can hold a line number
+     * @param line - the line number
+     */
+    private void grow(int line) {
+        if (line < counts.length) return;
+        int size = Math.max(line + 1, counts.length * 2);
+        counts = Arrays.copyOf(counts, size);
+        selfNanos = Arrays.copyOf(selfNanos, size);
+        totalNanos = Arrays.copyOf(totalNanos, size);
+        selfBytes = Arrays.copyOf(selfBytes, size);
+        loopIterations = Arrays.copyOf(loopIterations, size);
+    }
+}
@@ -0,0 +1,82 @@
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Scanner;
+
+/**
+ * class: PyCompiledScript
+ * A PyScript program compiled by PyScriptEngine. Every eval runs the same
+ * ScriptProgram in a new ScriptContext, so nothing is re-tokenized between calls.
+ */
+public class PyCompiledScript extends CompiledScript {
+    private final PyScriptEngine engine;
+    private final ScriptProgram program;
+
+    public PyCompiledScript(PyScriptEngine engine, ScriptProgram program) {
+        this.engine = engine;
+        this.program = program;
+    }
+
+    /**
+     * Method: eval - runs the program with the bindings and reader/writer of a javax.script context
+     * @param context - the javax.script context to run in
+     * @return null, PyScript programs do not produce a value
+     * @throws ScriptException - if the program fails while running
+     */
+    @Override
+    public Object eval(javax.script.ScriptContext context) throws ScriptException {
+        HashMap<String, HashMap<String, Object>> variables = new HashMap<>();
+        PyScriptEngine.toVariables(context.getBindings(javax.script.ScriptContext.GLOBAL_SCOPE), variables);
+        PyScriptEngine.toVariables(context.getBindings(javax.script.ScriptContext.ENGINE_SCOPE), variables);
+
+        Reader reader = (context.getReader() == null) ? new StringReader("") : context.getReader();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        try {
+            variables = program.execute(new ScriptContext(new Scanner(reader), output), variables);
+        } catch (ParseException | RuntimeException e) {
+            ScriptException failure = new ScriptException(e.getClass().getSimpleName() + ": " + e.getMessage());
+            failure.initCause(e);
+            throw failure;
+        } finally {
+            writeOutput(buffer, context.getWriter());
+        }
+
+        Bindings engineScope = context.getBindings(javax.script.ScriptContext.ENGINE_SCOPE);
+        if (engineScope != null) {
+            PyScriptEngine.fromVariables(variables, engineScope);
+        }
+        return null;
+    }
+
+    /**
+     * Method: writeOutput - copies what the program printed to the context's writer
+     * @param buffer - the printed output
+     * @param writer - the writer to copy to, may be null
+     * @throws ScriptException - if the writer fails
+     */
+    private void writeOutput(ByteArrayOutputStream buffer, Writer writer) throws ScriptException {
+        if (writer == null || buffer.size() == 0) return;
+        try {
+            writer.write(buffer.toString(StandardCharsets.UTF_8));
+            writer.flush();
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,123 @@
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * class: PyScriptEngine
+ * javax.script engine for PyScript. Scripts are compiled once into a
+ * ScriptProgram and can then be evaluated many times with different
+ * Bindings. Before a run every binding becomes a PyScript variable, and
+ * afterwards every PyScript variable is written back to the engine scope.
+ */
+public class PyScriptEngine extends AbstractScriptEngine implements Compilable {
+    private final PyScriptEngineFactory factory;
+
+    public PyScriptEngine() {
+        this(new PyScriptEngineFactory());
+    }
+
+    public PyScriptEngine(PyScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, javax.script.ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, javax.script.ScriptContext context) throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    /**
+     * Method: compile - bracket checks and tokenizes a script so it can be evaluated repeatedly.
+     *         Source that was compiled before is taken from the factory's cache.
+     * @param script - the source of the script
+     * @return the compiled script
+     * @throws ScriptException - if the script has a bracket or token error
+     */
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        try {
+            return new PyCompiledScript(this, factory.getCache().get(script.lines().toList()));
+        } catch (IllegalArgumentException e) {
+            ScriptException failure = new ScriptException(e.getMessage());
+            failure.initCause(e);
+            throw failure;
+        }
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(String.join("\n", new BufferedReader(script).lines().toList()));
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Method: toVariables - turns bindings into PyScript variables. Integers, Longs and BigIntegers become int,
+     *         Booleans become bool, long[] and int[] become array and everything else becomes a string.
+     * @param bindings - the bindings to convert, may be null
+     * @param globalVariables - hashmap of variables, their types and values, to add to
+     */
+    static void toVariables(Bindings bindings, HashMap<String, HashMap<String, Object>> globalVariables) {
+        if (bindings == null) return;
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            Object value = binding.getValue();
+            HashMap<String, Object> varData = new HashMap<>();
+            if (value instanceof Integer || value instanceof Long) {
+                varData.put("val", Numbers.box(((Number) value).longValue()));
+                varData.put("type", "int");
+            } else if (value instanceof BigInteger number) {
+                varData.put("val", Numbers.box(number));
+                varData.put("type", "int");
+            } else if (value instanceof Boolean) {
+                varData.put("val", value);
+                varData.put("type", "bool");
+            } else if (value instanceof long[] elements) {
+                varData.put("val", IntArray.of(elements));
+                varData.put("type", "array");
+            } else if (value instanceof int[] elements) {
+                varData.put("val", IntArray.of(Arrays.stream(elements).asLongStream().toArray()));
+                varData.put("type", "array");
+            } else if (value != null) {
+                varData.put("val", value.toString());
+                varData.put("type", "string");
+            } else {
+                continue;
+            }
+            globalVariables.put(binding.getKey(), varData);
+        }
+    }
+
+    /**
+     * Method: fromVariables - writes PyScript variables back into bindings, arrays as long[]
+     * @param globalVariables - hashmap of variables, their types and values, left by the script
+     * @param bindings - the bindings to write to
+     */
+    static void fromVariables(HashMap<String, HashMap<String, Object>> globalVariables, Bindings bindings) {
+        for (Map.Entry<String, HashMap<String, Object>> variable : globalVariables.entrySet()) {
+            Object value = variable.getValue().get("val");
+            bindings.put(variable.getKey(), (value instanceof IntArray array) ? array.toArray() : value);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+
+/**
+ * class: PyScriptEngineFactory
+ * Describes the PyScript engine to javax.script so a host can find it with
+ * new ScriptEngineManager().getEngineByName("pyscript").
+ */
+public class PyScriptEngineFactory implements ScriptEngineFactory {
+    private final ScriptCache cache = new ScriptCache(256);
+
+    /**
+     * Method: getCache
+     * @return the compiled program cache shared by every engine this factory makes
+     */
+    public ScriptCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String getEngineName() {
+        return "PyScript";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("pys", "txt");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("text/x-pyscript");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("pyscript", "PyScript");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "PyScript";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE:
+                return getEngineName();
+            case ScriptEngine.ENGINE_VERSION:
+                return getEngineVersion();
+            case ScriptEngine.NAME:
+                return getNames().getFirst();
+            case ScriptEngine.LANGUAGE:
+                return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION:
+                return getLanguageVersion();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Method: getMethodCallSyntax - PyScript has no objects, so this is a call of the function m
+     * @param obj - ignored
+     * @param m - name of the function
+     * @param args - the arguments
+     * @return the call, m(arg, ...)
+     */
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return m + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "puts(\"" + toDisplay + "\")";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return String.join("\n", statements);
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new PyScriptEngine(this);
+    }
+}
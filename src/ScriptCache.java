@@ -0,0 +1,114 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class: ScriptCache
+ * Bounded cache of compiled programs keyed by a SHA-256 hash of their source.
+ * When the cache is full the least recently used program is evicted. Running
+ * the same source again returns the cached ScriptProgram, so the Tokenizer
+ * is skipped entirely. Safe to use from several threads.
+ */
+public class ScriptCache {
+    private final int maxEntries;
+    private final LinkedHashMap<String, ScriptProgram> programs;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructor: builds an empty cache
+     * @param maxEntries - the most programs kept at once
+     */
+    public ScriptCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one program");
+        }
+        this.maxEntries = maxEntries;
+        // access order makes iteration order least recently used first
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ScriptProgram> eldest) {
+                if (size() > ScriptCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Method: get - returns the compiled program for some source, compiling it on a miss.
+     *         Compiling happens outside the lock so other lookups are not held up.
+     * @param lines - every line of the program
+     * @return the compiled program
+     */
+    public ScriptProgram get(List<String> lines) {
+        String key = hash(lines);
+        synchronized (this) {
+            ScriptProgram program = programs.get(key);
+            if (program != null) {
+                hits++;
+                return program;
+            }
+            misses++;
+        }
+        ScriptProgram compiled = ScriptProgram.compile(lines);
+        synchronized (this) {
+            ScriptProgram raced = programs.putIfAbsent(key, compiled);
+            return (raced != null) ? raced : compiled;
+        }
+    }
+
+    /**
+     * Method: hash - hashes the source of a program
+     * @param lines - every line of the program
+     * @return the SHA-256 of the lines joined by newlines, in hex
+     */
+    public static String hash(List<String> lines) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String line : lines) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Method: clear - removes every program, the counters are kept
+     */
+    public synchronized void clear() {
+        programs.clear();
+    }
+
+    public synchronized int size() {
+        return programs.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ScriptCache[size=" + programs.size() + "/" + maxEntries + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
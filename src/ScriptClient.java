@@ -0,0 +1,157 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * class: ScriptClient
+ * Sends one request to a ScriptServer and copies the script's output to an
+ * output stream as it arrives.
+ *
+ * Usage: java ScriptClient [--port n | --socket path] (<script file> | --file <path on server> | --stats) [input file]
+ * Exits with 0 when the script ran to the end, 1 when it failed and 3 when the server was too busy to take it.
+ */
+public class ScriptClient {
+    private final SocketAddress address;
+
+    /**
+     * class: Reply
+     * How a request ended: the status frame the server sent, S, F or B, and its text
+     */
+    public record Reply(byte status, String text) {
+        public boolean succeeded() {
+            return status == ScriptServer.SUCCEEDED;
+        }
+    }
+
+    public ScriptClient(SocketAddress address) {
+        this.address = address;
+    }
+
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), ScriptServer.DEFAULT_PORT);
+        String script = null;
+        String serverFile = null;
+        String inputFile = null;
+        boolean stats = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[++i]));
+                case "--socket" -> address = UnixDomainSocketAddress.of(args[++i]);
+                case "--file" -> serverFile = args[++i];
+                case "--stats" -> stats = true;
+                default -> {
+                    if (script == null && serverFile == null && !stats) script = args[i];
+                    else inputFile = args[i];
+                }
+            }
+        }
+        if (script == null && serverFile == null && !stats) {
+            System.err.println("Usage: java ScriptClient [--port n | --socket path]"
+                    + " (<script file> | --file <path on server> | --stats) [input file]");
+            System.exit(2);
+        }
+        String input = (inputFile == null) ? "" : Files.readString(Path.of(inputFile));
+        ScriptClient client = new ScriptClient(address);
+        Reply reply;
+        if (stats) reply = client.stats();
+        else if (serverFile != null) reply = client.runFile(serverFile, input, System.out);
+        else reply = client.run(Files.readString(Path.of(script)), input, System.out);
+        System.out.flush();
+        if (stats) {
+            System.out.print(reply.text());
+        } else if (!reply.succeeded()) {
+            System.err.println(reply.text());
+        }
+        System.exit(switch (reply.status()) {
+            case ScriptServer.SUCCEEDED -> 0;
+            case ScriptServer.BUSY -> 3;
+            default -> 1;
+        });
+    }
+
+    /**
+     * Method: run - runs a script sent with the request
+     * @param script - the source of the script
+     * @param input - what the script reads
+     * @param output - where the script's output is copied to
+     * @return how the request ended
+     * @throws IOException - if the server cannot be reached
+     */
+    public Reply run(String script, String input, OutputStream output) throws IOException {
+        try (SocketChannel connection = connect()) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(connection));
+            out.writeUTF("RUN");
+            ScriptServer.writeText(out, script);
+            ScriptServer.writeText(out, input);
+            out.flush();
+            return readReply(connection, output);
+        }
+    }
+
+    /**
+     * Method: runFile - runs a script that is on the server's disk
+     * @param path - path of the script on the server
+     * @param input - what the script reads
+     * @param output - where the script's output is copied to
+     * @return how the request ended
+     * @throws IOException - if the server cannot be reached
+     */
+    public Reply runFile(String path, String input, OutputStream output) throws IOException {
+        try (SocketChannel connection = connect()) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(connection));
+            out.writeUTF("FILE");
+            out.writeUTF(path);
+            ScriptServer.writeText(out, input);
+            out.flush();
+            return readReply(connection, output);
+        }
+    }
+
+    /**
+     * Method: stats - asks for the server's request counts and latencies
+     * @return the reply, whose text is the stats
+     * @throws IOException - if the server cannot be reached
+     */
+    public Reply stats() throws IOException {
+        try (SocketChannel connection = connect()) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(connection));
+            out.writeUTF("STATS");
+            out.flush();
+            return readReply(connection, OutputStream.nullOutputStream());
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel connection = (address instanceof UnixDomainSocketAddress)
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        connection.connect(address);
+        return connection;
+    }
+
+    private static Reply readReply(SocketChannel connection, OutputStream output) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(connection));
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type != ScriptServer.OUTPUT) {
+                    return new Reply(type, ScriptServer.readText(in));
+                }
+                output.write(in.readNBytes(in.readInt()));
+                output.flush();
+            }
+        } catch (EOFException e) {
+            return new Reply(ScriptServer.FAILED, "Server closed the connection");
+        }
+    }
+}
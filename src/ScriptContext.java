@@ -0,0 +1,579 @@
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.Scanner;
+
+/**
+ * class: ScriptContext
+ * Holds the state that belongs to a single run of a PyScript program,
+ * the input the script reads from and the stream it prints to. Every
+ * Grammar2 and Execute object created while running a script shares
+ * the same context, so several scripts can run side by side without
+ * touching each other's console.
+ */
+public class ScriptContext {
+    private static Scanner stdin;
+    private Scanner input;
+    private PrintStream output;
+    private Profiler profiler;
+    private ExecutionTrace trace = new ExecutionTrace(ExecutionTrace.DEFAULT_EVENTS);
+    private InputRecording recording;
+    private InputRecording replay;
+    private int replayed = 0;
+    // counted at the root of the run, whichever spawned block does the work
+    private final AtomicLong statementsExecuted = new AtomicLong();
+    private final AtomicLong loopIterations = new AtomicLong();
+    private final AtomicLong outputChars = new AtomicLong();
+    // limits, 0 means no limit
+    private long maxStatements = 0;
+    private long maxLoopIterations = 0;
+    private long deadline = 0;
+    private long timeoutMillis = 0;
+    private volatile boolean cancelled = false;
+    // memory accounting, 0 means no limit
+    private static final long VARIABLE_BYTES = 200; // name, varData map and its two entries
+    private long maxStringLength = 0;
+    private long maxVariables = 0;
+    private long maxMemoryBytes = 0;
+    private long variableCount = 0;
+    private long memoryBytes = 0;
+    // how many variables hold each array, which is charged only while one does
+    private final IdentityHashMap<IntArray, Integer> arrayHolders = new IdentityHashMap<>();
+    // functions and the pooled frames of the calls running right now
+    public static final int MAX_CALL_DEPTH = 200;
+    private final HashMap<String, ScriptFunction> functions = new HashMap<>();
+    private CallFrame[] frames = new CallFrame[8];
+    private int callDepth = 0;
+    // blocks started with spawn, each running on its own virtual thread with its own context
+    private ScriptContext parent;
+    private ScriptContext root = this; // the context of the whole run, which counts and limits for every block
+    private final ArrayList<Thread> tasks = new ArrayList<>();
+    private final Queue<Throwable> taskFailures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor: builds a context reading from the console and printing to System.out
+     */
+    public ScriptContext() {
+        this(consoleInput(), System.out);
+    }
+
+    /**
+     * Constructor: builds a context around the given input and output
+     * @param input - scanner the iInput/sInput/bInput expressions read from
+     * @param output - stream print and puts write to
+     */
+    public ScriptContext(Scanner input, PrintStream output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Method: reuse - gets the context ready for another run, with new input and output.
+     *         Everything the last run left behind is cleared: counters, limits, functions,
+     *         memory accounting, input recording, the profiler and the trace. The pooled
+     *         call frames and the trace's buffers are kept, which is what makes a reused
+     *         context cheaper than a new one. Must not be called while a run is using it.
+     * @param input - scanner the iInput/sInput/bInput expressions read from
+     * @param output - stream print and puts write to
+     */
+    public void reuse(Scanner input, PrintStream output) {
+        cancelTasks();
+        while (callDepth > 0) popFrame(); // left by a run that failed inside a call
+        this.input = input;
+        this.output = output;
+        profiler = null;
+        if (trace != null) trace.clear();
+        recording = null;
+        replay = null;
+        replayed = 0;
+        statementsExecuted.set(0);
+        loopIterations.set(0);
+        outputChars.set(0);
+        maxStatements = 0;
+        maxLoopIterations = 0;
+        deadline = 0;
+        timeoutMillis = 0;
+        cancelled = false;
+        maxStringLength = 0;
+        maxVariables = 0;
+        maxMemoryBytes = 0;
+        variableCount = 0;
+        memoryBytes = 0;
+        arrayHolders.clear();
+        functions.clear();
+    }
+
+    /**
+     * Method: consoleInput - returns the one scanner shared over System.in. A new
+     *         scanner per read would buffer and drop lines that were piped in.
+     * @return the console scanner
+     */
+    private static synchronized Scanner consoleInput() {
+        if (stdin == null) {
+            stdin = new Scanner(System.in);
+        }
+        return stdin;
+    }
+
+    /**
+     * Method: getInput
+     * @return the scanner input is read from
+     */
+    public Scanner getInput() {
+        return input;
+    }
+
+    /**
+     * Method: readInput - reads the next value for iInput, sInput or bInput, from the
+     *         replayed recording if there is one and from the input scanner otherwise.
+     *         Safe to call from spawned blocks.
+     * @return the line that was read
+     * @throws NoSuchElementException - if the input or the replayed recording has run out
+     */
+    public synchronized String readInput() {
+        if (parent != null) return parent.readInput(); // spawned blocks share the console of the run
+        String value;
+        if (replay != null) {
+            if (replayed == replay.size()) {
+                throw new NoSuchElementException("Replayed input ran out after " + replayed + " values");
+            }
+            value = replay.get(replayed++);
+        } else {
+            value = input.nextLine();
+        }
+        if (recording != null) recording.add(value);
+        return value;
+    }
+
+    /**
+     * Method: setRecording - records every value the run reads
+     * @param recording - recording to add the values to, or null to stop recording
+     */
+    public void setRecording(InputRecording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Method: setReplay - makes the run read its input from a recording instead of the scanner
+     * @param replay - recording to read from, starting at its first value, or null to read
+     *               from the scanner again
+     */
+    public void setReplay(InputRecording replay) {
+        this.replay = replay;
+        this.replayed = 0;
+    }
+
+    /**
+     * Method: getOutput
+     * @return the stream output is written to
+     */
+    public PrintStream getOutput() {
+        return output;
+    }
+
+    /**
+     * Method: getProfiler
+     * @return the profiler recording this run, or null when profiling is off
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Method: setProfiler - turns profiling on for this run
+     * @param profiler - the profiler to record into, or null to turn profiling off
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Method: setLimits - limits how much work the run may do. The time limit starts
+     *         counting when this is called.
+     * @param maxStatements - most lines that may be executed, 0 for no limit
+     * @param maxLoopIterations - most times loops may go around in total, 0 for no limit
+     * @param timeoutMillis - most wall clock time the run may take, 0 for no limit
+     */
+    public void setLimits(long maxStatements, long maxLoopIterations, long timeoutMillis) {
+        this.maxStatements = maxStatements;
+        this.maxLoopIterations = maxLoopIterations;
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = (timeoutMillis > 0) ? System.nanoTime() + timeoutMillis * 1_000_000 : 0;
+    }
+
+    /**
+     * Method: cancel - asks the run to stop. Safe to call from any thread; the script
+     *         stops with a ScriptTerminatedException at its next statement or loop iteration.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Method: setTrace - replaces the trace of recent events, on by default with
+     *         ExecutionTrace.DEFAULT_EVENTS events
+     * @param trace - the trace to record into, or null to turn tracing off
+     */
+    public void setTrace(ExecutionTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Method: attachTrace - adds a dump of the recent events to the exception that
+     *         ended the run, where it shows up with the exception's stack trace
+     * @param failure - the exception
+     */
+    public void attachTrace(Throwable failure) {
+        if (trace != null && trace.getRecorded() > 0) {
+            failure.addSuppressed(trace.toException());
+        }
+    }
+
+    /**
+     * Method: countStatement - counts one line parsed and executed
+     * @throws ScriptTerminatedException - if the run was cancelled or went over a limit
+     */
+    public void countStatement() {
+        long count = root.statementsExecuted.incrementAndGet();
+        if (root.maxStatements > 0 && count > root.maxStatements) {
+            throw new ScriptTerminatedException("Statement limit of " + root.maxStatements + " reached");
+        }
+        checkTerminated(count);
+    }
+
+    /**
+     * Method: countLoopIteration - counts one time around a while loop
+     * @throws ScriptTerminatedException - if the run was cancelled or went over a limit
+     */
+    public void countLoopIteration() {
+        long count = root.loopIterations.incrementAndGet();
+        if (root.maxLoopIterations > 0 && count > root.maxLoopIterations) {
+            throw new ScriptTerminatedException("Loop iteration limit of " + root.maxLoopIterations + " reached");
+        }
+        checkTerminated(count);
+    }
+
+    /**
+     * Method: checkTerminated - checks for cancellation, and for the time limit on every
+     *         256th count so the clock is not read on every statement
+     * @param count - the counter that was just increased
+     */
+    private void checkTerminated(long count) {
+        if (isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new ScriptTerminatedException("Script cancelled");
+        }
+        if (deadline != 0 && (count & 0xFF) == 0 && System.nanoTime() - deadline > 0) {
+            throw new ScriptTerminatedException("Time limit of " + timeoutMillis + " ms exceeded");
+        }
+    }
+
+    /**
+     * Method: checkWaiting - called while waiting on a channel or a spawned block, checks
+     *         for cancellation and the time limit on every call
+     * @throws ScriptTerminatedException - if the run was cancelled or ran out of time
+     */
+    public void checkWaiting() {
+        if (isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new ScriptTerminatedException("Script cancelled");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new ScriptTerminatedException("Time limit of " + timeoutMillis + " ms exceeded");
+        }
+    }
+
+    /**
+     * Method: setMemoryLimits - limits how much memory the values of the run may hold
+     * @param maxStringLength - longest string @ may build, 0 for no limit
+     * @param maxVariables - most variables that may be declared, 0 for no limit
+     * @param maxMemoryBytes - most estimated bytes all variables together may hold, 0 for no limit
+     */
+    public void setMemoryLimits(long maxStringLength, long maxVariables, long maxMemoryBytes) {
+        this.maxStringLength = maxStringLength;
+        this.maxVariables = maxVariables;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Method: checkStringLength - called before a string is built by @, so a string too big
+     *         for the string or memory limit fails before it is allocated
+     * @param length - the length the new string would have
+     * @throws ScriptTerminatedException - if the string would be over a limit
+     */
+    public synchronized void checkStringLength(long length) {
+        if (root != this) {
+            root.checkStringLength(length);
+            return;
+        }
+        if (maxStringLength > 0 && length > maxStringLength) {
+            throw new ScriptTerminatedException("String length limit of " + maxStringLength + " reached");
+        }
+        if (maxMemoryBytes > 0 && memoryBytes + 40 + 2 * length > maxMemoryBytes) {
+            throw new ScriptTerminatedException("Memory limit of " + maxMemoryBytes + " bytes reached");
+        }
+    }
+
+    /**
+     * Method: chargeVariable - keeps a running estimate of the memory held by variables.
+     *         Called before every write to a variable, with the value it replaces. An array
+     *         held by several variables is charged once, by the first to hold it, and let go
+     *         of by the last.
+     * @param oldValue - the value being replaced, null for a new variable
+     * @param newValue - the value being stored
+     * @param declared - whether this write creates a new variable
+     * @throws ScriptTerminatedException - if the write would go over a limit
+     */
+    public synchronized void chargeVariable(Object oldValue, Object newValue, boolean declared) {
+        if (root != this) {
+            root.chargeVariable(oldValue, newValue, declared);
+            return;
+        }
+        long added = (newValue instanceof IntArray array && (array == oldValue || arrayHolders.containsKey(array)))
+                ? 0 : sizeOf(newValue);
+        long removed = (oldValue instanceof IntArray array && (array == newValue || arrayHolders.getOrDefault(array, 1) > 1))
+                ? 0 : sizeOf(oldValue);
+        long bytes = memoryBytes + added - removed + (declared ? VARIABLE_BYTES : 0);
+        if (declared && maxVariables > 0 && variableCount + 1 > maxVariables) {
+            throw new ScriptTerminatedException("Variable limit of " + maxVariables + " reached");
+        }
+        if (maxMemoryBytes > 0 && bytes > maxMemoryBytes) {
+            throw new ScriptTerminatedException("Memory limit of " + maxMemoryBytes + " bytes reached");
+        }
+        if (maxStringLength > 0 && newValue instanceof String string && string.length() > maxStringLength) {
+            throw new ScriptTerminatedException("String length limit of " + maxStringLength + " reached");
+        }
+        if (declared) variableCount++;
+        memoryBytes = bytes;
+        if (newValue instanceof IntArray array) arrayHolders.merge(array, 1, Integer::sum);
+        if (oldValue instanceof IntArray array) letGo(array);
+    }
+
+    /**
+     * Method: chargeBytes - adds memory a variable's value grew by in place, an array
+     *         doubling its storage
+     * @param bytes - how many bytes were added
+     * @throws ScriptTerminatedException - if the growth would go over the memory limit
+     */
+    public synchronized void chargeBytes(long bytes) {
+        if (root != this) {
+            root.chargeBytes(bytes);
+            return;
+        }
+        if (maxMemoryBytes > 0 && memoryBytes + bytes > maxMemoryBytes) {
+            throw new ScriptTerminatedException("Memory limit of " + maxMemoryBytes + " bytes reached");
+        }
+        memoryBytes += bytes;
+    }
+
+    /**
+     * Method: releaseVariable - takes a variable that no longer exists, a local of a
+     *         function call that returned, out of the memory estimate
+     * @param value - the value the variable held
+     */
+    public synchronized void releaseVariable(Object value) {
+        if (root != this) {
+            root.releaseVariable(value);
+            return;
+        }
+        variableCount--;
+        memoryBytes -= VARIABLE_BYTES;
+        if (value instanceof IntArray array) {
+            if (arrayHolders.getOrDefault(array, 1) == 1) memoryBytes -= sizeOf(array);
+            letGo(array);
+        } else {
+            memoryBytes -= sizeOf(value);
+        }
+    }
+
+    /**
+     * Method: letGo - counts one variable fewer holding an array
+     * @param array - the array
+     */
+    private void letGo(IntArray array) {
+        arrayHolders.computeIfPresent(array, (held, holders) -> (holders == 1) ? null : holders - 1);
+    }
+
+    /**
+     * Method: sizeOf - rough size of a stored value, two bytes a character for strings
+     * @param value - an int, bool, string or array value, or null
+     * @return estimated bytes
+     */
+    private static long sizeOf(Object value) {
+        if (value == null) return 0;
+        if (value instanceof String string) return 40 + 2L * string.length();
+        if (value instanceof IntArray array) return 32 + 8L * array.capacity();
+        if (value instanceof BigInteger big) return 40 + big.bitLength() / 8;
+        return 16;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getVariableCount() {
+        return variableCount;
+    }
+
+    /**
+     * Method: defineFunction - declares a function, replacing any earlier one of the same name
+     * @param function - the function
+     */
+    public void defineFunction(ScriptFunction function) {
+        functions.put(function.name, function);
+    }
+
+    /**
+     * Method: getFunction
+     * @param name - name of a function
+     * @return the function, or null if none has been declared with that name
+     */
+    public ScriptFunction getFunction(String name) {
+        return functions.get(name);
+    }
+
+    public HashMap<String, ScriptFunction> getFunctions() {
+        return functions;
+    }
+
+    /**
+     * Method: pushFrame - starts a function call, reusing the pooled frame for its depth
+     * @return the frame of the call
+     * @throws ScriptTerminatedException - if the calls would go deeper than MAX_CALL_DEPTH
+     */
+    public CallFrame pushFrame() {
+        if (callDepth == MAX_CALL_DEPTH) {
+            throw new ScriptTerminatedException("Call depth limit of " + MAX_CALL_DEPTH + " reached");
+        }
+        if (callDepth == frames.length) {
+            frames = Arrays.copyOf(frames, Math.min(MAX_CALL_DEPTH, frames.length * 2));
+        }
+        if (frames[callDepth] == null) {
+            frames[callDepth] = new CallFrame();
+        }
+        return frames[callDepth++];
+    }
+
+    /**
+     * Method: popFrame - ends the innermost function call and clears its frame
+     */
+    public void popFrame() {
+        frames[--callDepth].clear(this);
+    }
+
+    /**
+     * Method: currentFrame
+     * @return the frame of the innermost function call, or null outside of any call
+     */
+    public CallFrame currentFrame() {
+        return (callDepth == 0) ? null : frames[callDepth - 1];
+    }
+
+    /**
+     * Method: forTask - builds the context a spawned block runs with. It prints to the same
+     *         stream, reads from the same input, has the functions declared so far, and is
+     *         cancelled with this context. Its statements, loop iterations, output, variables
+     *         and memory are counted by the root context of the run, against the run's limits,
+     *         so spawning cannot get around them.
+     * @return the new context
+     */
+    public ScriptContext forTask() {
+        ScriptContext child = new ScriptContext(input, output);
+        child.parent = this;
+        child.root = root;
+        child.timeoutMillis = timeoutMillis;
+        child.deadline = deadline;
+        child.functions.putAll(functions);
+        return child;
+    }
+
+    /**
+     * Method: spawn - starts a block on a new virtual thread. A failure, an Error such as
+     *         a StackOverflowError included, is kept and thrown by the next joinTasks.
+     * @param block - the block to run
+     */
+    public void spawn(Runnable block) {
+        tasks.add(Thread.ofVirtual().name("pyscript-spawn-" + tasks.size()).start(() -> {
+            try {
+                block.run();
+            } catch (Throwable e) {
+                taskFailures.add(e);
+            }
+        }));
+    }
+
+    /**
+     * Method: joinTasks - waits for every block this context spawned to finish
+     * @throws RuntimeException - the first failure of a spawned block, if any failed
+     * @throws Error - the first failure of a spawned block, if it was an Error
+     * @throws ScriptTerminatedException - if the run was cancelled or ran out of time while waiting
+     */
+    public void joinTasks() {
+        try {
+            for (Thread task : tasks) {
+                while (!task.join(Duration.ofMillis(10))) {
+                    checkWaiting();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptTerminatedException("Script cancelled");
+        } catch (ScriptTerminatedException e) {
+            cancelTasks();
+            throw e;
+        }
+        tasks.clear();
+        Throwable failure = taskFailures.poll();
+        if (failure != null) {
+            taskFailures.clear();
+            if (failure instanceof Error error) throw error;
+            if (failure instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException("Spawned block failed", failure);
+        }
+    }
+
+    /**
+     * Method: cancelTasks - stops every block this context spawned, without waiting for them
+     */
+    public void cancelTasks() {
+        for (Thread task : tasks) {
+            task.interrupt();
+        }
+        tasks.clear();
+        taskFailures.clear();
+    }
+
+    /**
+     * Method: countOutput - counts characters written by print and puts
+     * @param chars - how many characters were written
+     */
+    public void countOutput(int chars) {
+        root.outputChars.addAndGet(chars);
+    }
+
+    public long getStatementsExecuted() {
+        return statementsExecuted.get();
+    }
+
+    public long getLoopIterations() {
+        return loopIterations.get();
+    }
+
+    public long getOutputChars() {
+        return outputChars.get();
+    }
+}
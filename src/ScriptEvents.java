@@ -0,0 +1,43 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * class: ScriptEvents
+ * JDK Flight Recorder events for the phases of running a PyScript program.
+ * They cost nothing unless a recording with the PyScript category is on.
+ */
+public class ScriptEvents {
+
+    @Name("pyscript.Tokenize")
+    @Label("PyScript Tokenize")
+    @Category("PyScript")
+    @Description("Bracket checking and tokenizing a program")
+    public static class Tokenize extends Event {
+        @Label("Lines")
+        public int lines;
+    }
+
+    @Name("pyscript.Run")
+    @Label("PyScript Run")
+    @Category("PyScript")
+    @Description("Parsing and executing a compiled program")
+    public static class Run extends Event {
+        @Label("Statements")
+        public long statements;
+
+        @Label("Loop Iterations")
+        public long loopIterations;
+
+        @Label("Variables")
+        public int variables;
+
+        @Label("Output Characters")
+        public long outputChars;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * class: ScriptFunction
+ * A function declared with def name(params) { ... }. Holds the lines of
+ * its block, the nesting depth those lines run at and the line of its
+ * header. A function whose whole block is a single return of an expression
+ * that does not call the function itself is inlined: the caller evaluates
+ * the expression directly instead of parsing the block as statements.
+ */
+public class ScriptFunction {
+    public final String name;
+    public final String[] params;
+    public final List<List<Tokenizer.Token>> body;
+    public final int bodyDepth;
+    public final int line;
+    // the return line of an inlined function, null when the block is run as statements
+    public final List<Tokenizer.Token> inlineReturn;
+
+    /**
+     * Constructor: builds a function
+     * @param name - name the function is called by
+     * @param params - names of its parameters, in order
+     * @param body - the lines of its block, without the header and the closing brace
+     * @param bodyDepth - how many blocks the lines of the block are inside of
+     * @param line - line number of the def header
+     */
+    public ScriptFunction(String name, String[] params, List<List<Tokenizer.Token>> body, int bodyDepth, int line) {
+        this.name = name;
+        this.params = params;
+        this.body = new ArrayList<>(body);
+        this.bodyDepth = bodyDepth;
+        this.line = line;
+        this.inlineReturn = canInline() ? this.body.getFirst() : null;
+    }
+
+    /**
+     * Method: canInline
+     * @return whether the block is one return of an expression with no call to this function
+     */
+    private boolean canInline() {
+        if (body.size() != 1) return false;
+        List<Tokenizer.Token> tokens = body.getFirst();
+        if (tokens.getFirst().type != Tokenizer.Type.RETURN || tokens.size() < 3) return false;
+        for (int i = 1; i + 1 < tokens.size(); i++) {
+            if (tokens.get(i).type == Tokenizer.Type.VAR_NAME && tokens.get(i).lexeme.equals(name)
+                    && tokens.get(i + 1).type == Tokenizer.Type.PAREN_OPEN) {
+                return false; // recursive
+            }
+        }
+        return true;
+    }
+}
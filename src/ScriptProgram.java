@@ -0,0 +1,224 @@
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * class: ScriptProgram
+ * A PyScript program that has already been bracket checked and tokenized.
+ * Compiling once and executing many times skips the Tokenizer on every
+ * run after the first. The token lists are never modified while running,
+ * so one ScriptProgram can be executed by several threads at once.
+ */
+public class ScriptProgram {
+    private final List<? extends List<Tokenizer.Token>> tokenLines;
+
+    public ScriptProgram(List<? extends List<Tokenizer.Token>> tokenLines) {
+        this.tokenLines = tokenLines;
+    }
+
+    /**
+     * Method: compile - bracket checks and tokenizes a program, large programs in parallel
+     * @param lines - every line of the program
+     * @return the compiled program
+     */
+    public static ScriptProgram compile(List<String> lines) {
+        return new ScriptProgram(ParallelLexer.tokenizeAll(lines));
+    }
+
+    /**
+     * Method: compileLazy - compiles a program, leaving the lines inside blocks untokenized
+     *         until their block first runs, so branches and loops that never run cost
+     *         nothing to compile. The brackets of the whole program are still checked
+     *         up front; an unexpected character inside a block is reported when the
+     *         block runs instead. Programs with unbalanced brackets or a parenthesis
+     *         spanning lines are compiled eagerly so they fail with the usual error.
+     * @param lines - every line of the program
+     * @return the compiled program
+     */
+    public static ScriptProgram compileLazy(List<String> lines) {
+        int[] minDepths = new int[lines.size()];
+        int depth = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int minDepth = depth;
+            int parens = 0;
+            boolean inString = false;
+            for (int j = 0; j < line.length(); j++) {
+                char c = line.charAt(j);
+                if (c == '"') {
+                    inString = !inString;
+                } else if (!inString) {
+                    switch (c) {
+                        case '{' -> depth++;
+                        case '}' -> minDepth = Math.min(minDepth, --depth);
+                        case '(' -> parens++;
+                        case ')' -> parens--;
+                        default -> { }
+                    }
+                    if (depth < 0 || parens < 0) return compile(lines);
+                }
+            }
+            if (parens != 0) return compile(lines);
+            minDepths[i] = minDepth;
+        }
+        if (depth != 0) return compile(lines);
+
+        // lines the top level runs itself are needed anyway, tokenize them now
+        Tokenizer tokenizer = new Tokenizer();
+        List<List<Tokenizer.Token>> tokenLines = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            if (minDepths[i] == 0) {
+                tokenizer.lines = i + 1;
+                tokenLines.add(tokenizer.tokenize(lines.get(i)));
+            } else {
+                tokenLines.add(new LazyTokenLine(lines.get(i), i + 1, minDepths[i]));
+            }
+        }
+        tokenizer.checkUnclosed();
+        return new ScriptProgram(tokenLines);
+    }
+
+    /**
+     * Method: withoutDeadStores - the program without the assignments whose values are never
+     *         read (see DeadStoreEliminator). What it prints and reads is unchanged, but the
+     *         variables it leaves at the end are not, so only use it when those are not
+     *         looked at. Every line is tokenized and checked against the grammar first.
+     * @return the smaller program, or this one if nothing could be removed
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public ScriptProgram withoutDeadStores() throws ParseException {
+        validate();
+        List<List<Tokenizer.Token>> kept = DeadStoreEliminator.eliminate(tokenLines);
+        return (kept == null) ? this : new ScriptProgram(kept);
+    }
+
+    /**
+     * Method: getTokenLines
+     * @return the tokens of every line of the program
+     */
+    public List<? extends List<Tokenizer.Token>> getTokenLines() {
+        return tokenLines;
+    }
+
+    /**
+     * Method: execute - runs the program with no variables declared beforehand
+     * @param context - the input and output the program uses
+     * @return globalVariables - the variables left at the end of the program
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public HashMap<String, HashMap<String, Object>> execute(ScriptContext context) throws ParseException {
+        return execute(context, new HashMap<>());
+    }
+
+    /**
+     * Method: execute - runs the program, starting from the given variables
+     * @param context - the input and output the program uses
+     * @param variables - hashmap of variables, their types and values, to declare before
+     *                  the first line runs
+     * @return globalVariables - the variables left at the end of the program
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public HashMap<String, HashMap<String, Object>> execute(
+            ScriptContext context,
+            HashMap<String, HashMap<String, Object>> variables) throws ParseException {
+        return execute(context, variables, 0, tokenLines.size());
+    }
+
+    /**
+     * Method: execute - runs part of the program, starting from the given variables. Both
+     *         ends must be resume points (see isResumePoint).
+     * @param context - the input and output the program uses
+     * @param variables - hashmap of variables, their types and values, to declare before
+     *                  the first line runs
+     * @param fromLine - index of the first line to run
+     * @param toLine - index of the line to stop before
+     * @return globalVariables - the variables left after the last line that ran
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public HashMap<String, HashMap<String, Object>> execute(
+            ScriptContext context,
+            HashMap<String, HashMap<String, Object>> variables,
+            int fromLine, int toLine) throws ParseException {
+        if (!isResumePoint(fromLine)) {
+            throw new IllegalArgumentException("Cannot start running at line " + (fromLine + 1)
+                    + ", it continues an if-elif-else chain");
+        }
+        ScriptEvents.Run event = new ScriptEvents.Run();
+        event.begin();
+        Grammar2 grammar = new Grammar2(context);
+        grammar.addVariables(variables);
+        long parseNanos = 0;
+        boolean failed = true;
+        try {
+            for (List<Tokenizer.Token> tokens : tokenLines.subList(fromLine, toLine)) {
+                long start = System.nanoTime();
+                grammar.addTokens(tokens);
+                grammar.parse();
+                parseNanos += System.nanoTime() - start;
+            }
+            if (toLine < tokenLines.size() && !(grammar.isIdle() && isResumePoint(toLine))) {
+                throw new IllegalArgumentException("Cannot stop running before line " + (toLine + 1)
+                        + ", it is inside a block or continues an if-elif-else chain");
+            }
+            context.joinTasks(); // the run is over once every spawned block is
+            failed = false;
+        } catch (RuntimeException | ParseException e) {
+            context.attachTrace(e);
+            throw e;
+        } finally {
+            if (failed) context.cancelTasks();
+            InterpreterMetrics.get().recordRun(context, parseNanos, grammar.globalVariables.size());
+            event.statements = context.getStatementsExecuted();
+            event.loopIterations = context.getLoopIterations();
+            event.variables = grammar.globalVariables.size();
+            event.outputChars = context.getOutputChars();
+            event.failed = failed;
+            event.commit();
+        }
+        return grammar.globalVariables;
+    }
+
+    /**
+     * Method: isResumePoint - whether a line can be run with nothing but the variables
+     *         carried over from the lines before it. Only checks the line itself; whether
+     *         the lines before it left a block open is only known while running.
+     * @param line - index of a line, or the number of lines for the end of the program
+     * @return false if the line continues an if-elif-else chain
+     */
+    public boolean isResumePoint(int line) {
+        if (line < 0 || line > tokenLines.size()) {
+            throw new IllegalArgumentException("Line " + (line + 1) + " is outside the program");
+        }
+        if (line == tokenLines.size()) return true;
+        Tokenizer.Type first = tokenLines.get(line).getFirst().type;
+        return first != Tokenizer.Type.ELIF && first != Tokenizer.Type.ELSE
+                && first != Tokenizer.Type.BRACE_CLOSE;
+    }
+
+    /**
+     * Method: validate - checks every line against the grammar without executing anything
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public void validate() throws ParseException {
+        validate(0, tokenLines.size());
+    }
+
+    /**
+     * Method: validate - checks some of the lines against the grammar without executing
+     *         anything. The lines must be whole statements, starting at a resume point
+     *         outside of every block.
+     * @param fromLine - index of the first line to check
+     * @param toLine - index of the line to stop before
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public void validate(int fromLine, int toLine) throws ParseException {
+        // the deepest depth, so lazy lines inside blocks are checked here as well
+        Grammar2 grammar = new Grammar2(new ScriptContext(), Integer.MAX_VALUE);
+        grammar.setValidateOnly(true);
+        for (List<Tokenizer.Token> tokens : tokenLines.subList(fromLine, toLine)) {
+            grammar.addTokens(tokens);
+            grammar.parse();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.TreeMap;
+
+/**
+ * class: ScriptRepl
+ * An interactive PyScript prompt. Every statement is tokenized and run as
+ * soon as it is entered, against one Grammar2 and ScriptContext kept for
+ * the whole session, so variables and functions carry over from line to
+ * line and nothing entered earlier is ever run again. A line that leaves
+ * a brace open starts a block: its lines are held, using the Tokenizer's
+ * bracket stack to tell when it is closed, and the whole block runs then.
+ * A line on its own that is not a statement is printed as an expression.
+ *
+ * A line that fails is reported and forgotten, along with the block it was
+ * in; the variables are left as they were.
+ *
+ * Commands: :vars lists the variables, :reset forgets every variable and
+ * function, :quit ends the session, as does the end of the input.
+ *
+ * Usage: java ScriptRepl
+ * Statements and the input they read with iInput, sInput and bInput both
+ * come from stdin. The prompts are only shown on a terminal.
+ */
+public class ScriptRepl {
+    private final Scanner input;
+    private final PrintStream output;
+    private final PrintStream errors;
+    private final ScriptContext context;
+    private final Grammar2 grammar;
+    private Tokenizer tokenizer = new Tokenizer();
+    private final List<ArrayList<Tokenizer.Token>> block = new ArrayList<>();
+    private final List<String> blockText = new ArrayList<>();
+
+    /**
+     * Constructor: starts a session with no variables
+     * @param input - where statements and the values the script reads come from
+     * @param output - where the script prints to
+     * @param errors - where failed lines are reported
+     */
+    public ScriptRepl(Scanner input, PrintStream output, PrintStream errors) {
+        this.input = input;
+        this.output = output;
+        this.errors = errors;
+        this.context = new ScriptContext(input, output);
+        this.grammar = new Grammar2(context);
+    }
+
+    public static void main(String[] args) {
+        ScriptRepl repl = new ScriptRepl(new Scanner(System.in), System.out, System.err);
+        repl.run(System.console() != null);
+    }
+
+    /**
+     * Method: run - reads and runs lines until :quit or the end of the input
+     * @param prompt - whether to show a prompt before each line
+     */
+    public void run(boolean prompt) {
+        while (true) {
+            if (prompt) {
+                output.print(block.isEmpty() ? ">>> " : "... ");
+                output.flush();
+            }
+            String line;
+            try {
+                line = input.nextLine();
+            } catch (NoSuchElementException e) {
+                break;
+            }
+            if (block.isEmpty() && line.strip().startsWith(":")) {
+                if (!command(line.strip())) break;
+                continue;
+            }
+            enter(line);
+        }
+        if (!block.isEmpty()) {
+            errors.println("Error: block still open at the end of the input");
+        }
+        try {
+            context.joinTasks();
+        } catch (RuntimeException e) {
+            report(e);
+        }
+        output.flush();
+    }
+
+    /**
+     * Method: enter - takes one line, running it, or the block it closes, right away
+     * @param line - the line as entered
+     * @return whether it ran without an error; a line that leaves a block open counts as having run
+     */
+    public boolean enter(String line) {
+        try {
+            ArrayList<Tokenizer.Token> tokens = tokenizer.tokenize(line);
+            tokenizer.endLine(line);
+            block.add(tokens);
+            blockText.add(line);
+            if (tokenizer.openBrackets() > 0) {
+                return true; // the block goes on
+            }
+            boolean lone = block.size() == 1 && grammar.isIdle();
+            for (int i = 0; i < block.size(); i++) {
+                grammar.addTokens(block.get(i));
+                try {
+                    grammar.parse();
+                } catch (ParseException e) {
+                    if (lone && echo(line)) break;
+                    throw new ParseException("Syntax error in line " + block.get(i).getFirst().line + ": "
+                            + blockText.get(i).strip(), e.getErrorOffset());
+                }
+            }
+            return true;
+        } catch (RuntimeException | ParseException e) {
+            report(e);
+            tokenizer.clearBrackets();
+            grammar.discardBlock();
+            return false;
+        } finally {
+            if (tokenizer.openBrackets() == 0) {
+                block.clear();
+                blockText.clear();
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Method: echo - prints a line that is not a statement as an expression
+     * @param line - the line as entered
+     * @return false if it is not an expression either, having run nothing
+     */
+    private boolean echo(String line) throws ParseException {
+        grammar.discardBlock();
+        Tokenizer expression = new Tokenizer();
+        expression.lines = block.getFirst().getFirst().line;
+        ArrayList<Tokenizer.Token> tokens;
+        try {
+            tokens = expression.tokenize("puts(" + line + ")");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Grammar2 validator = new Grammar2(new ScriptContext(), 0);
+        validator.setValidateOnly(true);
+        validator.addTokens(tokens);
+        try {
+            validator.parse();
+        } catch (ParseException e) {
+            return false;
+        }
+        grammar.addTokens(tokens);
+        grammar.parse();
+        return true;
+    }
+
+    /**
+     * Method: command - carries out a line starting with a colon
+     * @param command - the line, without surrounding whitespace
+     * @return false if the session should end
+     */
+    private boolean command(String command) {
+        switch (command) {
+            case ":quit", ":q" -> {
+                return false;
+            }
+            case ":vars" -> {
+                for (Map.Entry<String, HashMap<String, Object>> variable
+                        : new TreeMap<>(grammar.globalVariables).entrySet()) {
+                    Object value = variable.getValue().get("val");
+                    output.println(variable.getKey() + ": " + variable.getValue().get("type") + " = "
+                            + ((value instanceof Boolean bool) ? (bool ? "True" : "False")
+                            : (value instanceof String string) ? "\"" + string + "\"" : value));
+                }
+            }
+            case ":reset" -> {
+                context.cancelTasks();
+                grammar.reset();
+                context.reuse(input, output);
+                tokenizer = new Tokenizer();
+            }
+            default -> errors.println("Unknown command " + command + ", expected :vars, :reset or :quit");
+        }
+        output.flush();
+        return true;
+    }
+
+    /**
+     * Method: report - prints why a line failed, with the reasons behind it
+     * @param failure - what the line threw
+     */
+    private void report(Exception failure) {
+        StringBuilder message = new StringBuilder("Error");
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null) message.append("\n  ").append(cause.getMessage());
+        }
+        errors.println(message);
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * class: ScriptRunner
+ * Runs a whole PyScript program the same way TestGrammar2 does, checking
+ * the brackets first and then parsing line by line, but against a given
+ * ScriptContext so it can be called from other classes.
+ */
+public class ScriptRunner {
+
+    /**
+     * Runs a single script with console input and output.
+     * Usage: java ScriptRunner [options] <script file>
+     *   --profile               print a per line profile to stderr when the script ends
+     *   --collapsed <file>      also write flame graph stacks to a file (implies --profile)
+     *   --metrics               print the InterpreterMetrics counters to stderr at the end
+     *   --lazy                  tokenize the lines of a block only when the block first runs
+     *   --optimize              leave out assignments whose values are never read
+     *   --restore <file>        carry on from a snapshot written by InterpreterSnapshot
+     *   --record <file>         save every value the script reads to a file
+     *   --replay <file>         read the script's input from a saved file instead of the console
+     *   --trace <n>             keep the last n events to show if the script fails, 0 for none
+     *   --timeout <ms>          stop the script after this much wall clock time
+     *   --max-statements <n>    stop the script after this many statements
+     *   --max-iterations <n>    stop the script after this many loop iterations
+     *   --max-string <n>        stop the script if @ builds a string longer than this
+     *   --max-variables <n>     stop the script if it declares more variables than this
+     *   --max-memory <bytes>    stop the script if its variables hold more than this
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        boolean profile = false;
+        boolean metrics = false;
+        boolean lazy = false;
+        boolean optimize = false;
+        String restorePath = null;
+        String recordPath = null;
+        String replayPath = null;
+        String collapsedPath = null;
+        long timeout = 0;
+        long maxStatements = 0;
+        long maxIterations = 0;
+        long maxString = 0;
+        long maxVariables = 0;
+        long maxMemory = 0;
+        int traceEvents = ExecutionTrace.DEFAULT_EVENTS;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--profile" -> profile = true;
+                case "--metrics" -> metrics = true;
+                case "--lazy" -> lazy = true;
+                case "--optimize" -> optimize = true;
+                case "--restore" -> restorePath = args[++i];
+                case "--record" -> recordPath = args[++i];
+                case "--replay" -> replayPath = args[++i];
+                case "--trace" -> traceEvents = Integer.parseInt(args[++i]);
+                case "--collapsed" -> {
+                    profile = true;
+                    collapsedPath = args[++i];
+                }
+                case "--timeout" -> timeout = Long.parseLong(args[++i]);
+                case "--max-statements" -> maxStatements = Long.parseLong(args[++i]);
+                case "--max-iterations" -> maxIterations = Long.parseLong(args[++i]);
+                case "--max-string" -> maxString = Long.parseLong(args[++i]);
+                case "--max-variables" -> maxVariables = Long.parseLong(args[++i]);
+                case "--max-memory" -> maxMemory = Long.parseLong(args[++i]);
+                default -> file = args[i];
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: java ScriptRunner [options] <script file>");
+            System.exit(2);
+        }
+
+        List<String> lines = readLines(file);
+        ScriptContext context = new ScriptContext();
+        Profiler profiler = profile ? new Profiler(lines, collapsedPath != null) : null;
+        context.setProfiler(profiler);
+        context.setLimits(maxStatements, maxIterations, timeout);
+        context.setMemoryLimits(maxString, maxVariables, maxMemory);
+        context.setTrace(traceEvents > 0 ? new ExecutionTrace(traceEvents) : null);
+        InputRecording recording = (recordPath != null) ? new InputRecording() : null;
+        context.setRecording(recording);
+        if (replayPath != null) context.setReplay(InputRecording.read(new File(replayPath)));
+        try {
+            if (restorePath != null) {
+                InterpreterSnapshot.read(new File(restorePath)).resume(lines, context);
+            } else if (optimize) {
+                ScriptProgram program = lazy ? ScriptProgram.compileLazy(lines) : ScriptProgram.compile(lines);
+                program.withoutDeadStores().execute(context);
+            } else if (lazy) {
+                ScriptProgram.compileLazy(lines).execute(context);
+            } else {
+                run(lines, context);
+            }
+        } finally {
+            context.getOutput().flush();
+            if (recording != null) recording.write(new File(recordPath));
+            if (profiler != null) {
+                profiler.printReport(System.err);
+                if (collapsedPath != null) profiler.writeCollapsedStacks(collapsedPath);
+            }
+            if (metrics) {
+                System.err.println(InterpreterMetrics.get().snapshot());
+            }
+        }
+    }
+
+    /**
+     * Method: readLines - reads every line of a PyScript file
+     * @param filePath - path of the file to read
+     * @return lines - list of the lines in the file
+     * @throws IOException - if the file cannot be read
+     */
+    public static List<String> readLines(String filePath) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Method: run - error checks and runs a program
+     * @param lines - every line of the program
+     * @param context - the input and output the program uses
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public static void run(List<String> lines, ScriptContext context) throws ParseException {
+        ScriptProgram.compile(lines).execute(context);
+    }
+}
@@ -0,0 +1,508 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * class: ScriptServer
+ * Long running server that runs scripts sent to it over a local socket, so
+ * a script costs a round trip instead of a JVM start. Listens on a loopback
+ * TCP port or a Unix domain socket. Scripts run on a fixed number of worker
+ * threads, each with a ScriptContext taken from a pool. The contexts are
+ * warmed up when the server starts and reused from one request to the next.
+ *
+ * Requests that find every worker busy wait in a bounded queue. When the
+ * queue is full the request is turned away at once with a busy reply, so
+ * a client can back off instead of the server falling further behind. The
+ * output of a script is streamed back as it is printed. Every reply ends
+ * with a status frame. The time each request spent queued and running is
+ * kept for the STATS request.
+ *
+ * Protocol, on DataInput/DataOutput streams, one request per connection:
+ *   request:  "RUN"   then int length + UTF-8 script, int length + UTF-8 input
+ *             "FILE"  then a UTF path of a script on the server, int length + UTF-8 input
+ *             "STATS"
+ *   reply:    any number of frames 'O' + int length + output bytes, then one of
+ *             'S' (ran to the end), 'F' (failed, with the error) or 'B' (busy, try again),
+ *             each followed by int length + UTF-8 text
+ *
+ * Usage: java ScriptServer [--port n | --socket path] [--workers n] [--queue n]
+ *                          [--timeout ms] [--max-memory bytes] [--warmup runs]
+ * ScriptClient sends requests from the command line.
+ */
+public class ScriptServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7878;
+    public static final byte OUTPUT = 'O', SUCCEEDED = 'S', FAILED = 'F', BUSY = 'B';
+    private static final int MAX_REQUEST_BYTES = 16 << 20;
+    // requests being read at once; each can hold a script and an input of MAX_REQUEST_BYTES
+    private static final int MAX_READING = 16;
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+    private final SocketAddress address;
+    private final ServerSocketChannel server;
+    private final ThreadPoolExecutor workers;
+    private final ArrayBlockingQueue<ScriptContext> contexts;
+    private final ScriptCache cache = new ScriptCache(256);
+    private final ConcurrentHashMap<String, CompiledFile> files = new ConcurrentHashMap<>();
+    private final Stats stats = new Stats();
+    private final Semaphore reading = new Semaphore(MAX_READING);
+    private final long timeout;
+    private final long maxMemory;
+    private Thread acceptThread;
+
+    /**
+     * class: CompiledFile - a script named by a FILE request, and when its source was last changed
+     */
+    private record CompiledFile(long modified, ScriptProgram program) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT);
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        int queue = 64;
+        long timeout = 0;
+        long maxMemory = 0;
+        int warmup = 20;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[++i]));
+                case "--socket" -> address = UnixDomainSocketAddress.of(args[++i]);
+                case "--workers" -> workerCount = Integer.parseInt(args[++i]);
+                case "--queue" -> queue = Integer.parseInt(args[++i]);
+                case "--timeout" -> timeout = Long.parseLong(args[++i]);
+                case "--max-memory" -> maxMemory = Long.parseLong(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Usage: java ScriptServer [--port n | --socket path] [--workers n] [--queue n]"
+                            + " [--timeout ms] [--max-memory bytes] [--warmup runs]");
+                    System.exit(2);
+                }
+            }
+        }
+        ScriptServer server = new ScriptServer(address, workerCount, queue, timeout, maxMemory);
+        server.warmUp(warmup);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Could not shut down cleanly: " + e);
+            }
+        }));
+        server.start();
+        System.err.println("Listening on " + address + " with " + workerCount + " workers");
+    }
+
+    /**
+     * Constructor: binds the socket and builds the workers and their contexts
+     * @param address - a loopback InetSocketAddress or a UnixDomainSocketAddress
+     * @param workerCount - how many scripts run at once
+     * @param queue - how many more requests may wait for a worker before requests are turned away
+     * @param timeout - milliseconds each script may run for, 0 for no limit
+     * @param maxMemory - estimated bytes each script's variables may hold, 0 for no limit
+     * @throws IOException - if the socket cannot be bound
+     */
+    public ScriptServer(SocketAddress address, int workerCount, int queue, long timeout, long maxMemory) throws IOException {
+        if (workerCount < 1 || queue < 0) {
+            throw new IllegalArgumentException("Need at least 1 worker and a queue that is not negative");
+        }
+        this.address = address;
+        this.timeout = timeout;
+        this.maxMemory = maxMemory;
+        if (address instanceof UnixDomainSocketAddress unix) {
+            deleteSocket(unix.getPath()); // left by a server that did not shut down
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        // a SynchronousQueue when there is no queue, as ArrayBlockingQueue needs room for one
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                (queue > 0) ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>(),
+                Thread.ofPlatform().name("pyscript-worker-", 0).factory());
+        contexts = new ArrayBlockingQueue<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            contexts.add(new ScriptContext(new Scanner(""), NO_OUTPUT));
+        }
+    }
+
+    /**
+     * Method: warmUp - runs a few generated scripts on every pooled context so the
+     *         interpreter is compiled by the JIT before the first request arrives
+     * @param runs - how many scripts to run on each context
+     */
+    public void warmUp(int runs) {
+        List<ScriptProgram> programs = List.of(
+                ScriptProgram.compile(new WorkloadGenerator(200, 3, 30, 5, 2, 1).generate()),
+                ScriptProgram.compile(Benchmarks.callScript(100)),
+                ScriptProgram.compile(Benchmarks.arrayScript(100)));
+        for (ScriptContext context : contexts) {
+            for (int i = 0; i < runs; i++) {
+                context.reuse(new Scanner(""), NO_OUTPUT);
+                try {
+                    programs.get(i % programs.size()).execute(context);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Warm up script failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method: start - accepts connections on a thread of its own until closed
+     */
+    public synchronized void start() {
+        if (acceptThread != null) return;
+        acceptThread = Thread.ofPlatform().name("pyscript-accept").start(() -> {
+            try {
+                while (true) {
+                    // once MAX_READING requests are being read, further connections wait in the backlog
+                    reading.acquire();
+                    SocketChannel connection;
+                    try {
+                        connection = server.accept();
+                    } catch (IOException | RuntimeException e) {
+                        reading.release();
+                        throw e;
+                    }
+                    // reading a request can wait on a slow client, so it gets a thread of its own
+                    Thread.ofVirtual().start(() -> {
+                        try {
+                            handle(connection);
+                        } finally {
+                            reading.release();
+                        }
+                    });
+                }
+            } catch (ClosedChannelException | InterruptedException e) {
+                // closed
+            } catch (IOException e) {
+                System.err.println("Stopped accepting connections: " + e);
+            }
+        });
+    }
+
+    /**
+     * Method: handle - reads one request and queues it for a worker, or answers busy. Returns
+     *         once the request is queued, so at most MAX_READING calls run at once.
+     * @param connection - the client's connection
+     */
+    private void handle(SocketChannel connection) {
+        DataOutputStream out = new DataOutputStream(Channels.newOutputStream(connection));
+        long received = 0;
+        try {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(connection));
+            String kind = in.readUTF();
+            received = System.nanoTime();
+            ScriptProgram program;
+            switch (kind) {
+                case "RUN" -> program = cache.get(readText(in).lines().toList());
+                case "FILE" -> program = compiledFile(in.readUTF());
+                case "STATS" -> {
+                    reply(out, SUCCEEDED, stats.toString());
+                    connection.close();
+                    return;
+                }
+                default -> throw new IllegalArgumentException("Unknown request: " + kind);
+            }
+            String input = readText(in);
+            long compiled = System.nanoTime();
+            long compiling = compiled - received;
+            try {
+                workers.execute(() -> run(connection, out, program, input, compiling, compiled));
+            } catch (RejectedExecutionException e) {
+                stats.rejected();
+                reply(out, BUSY, "Server busy, " + workers.getQueue().size() + " requests queued");
+                connection.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // the request could not be read or its script could not be compiled
+            if (received != 0) stats.record(System.nanoTime() - received, 0, 0, true);
+            try (connection) {
+                reply(out, FAILED, e.getClass().getSimpleName() + ": " + e.getMessage());
+            } catch (IOException ignored) {
+                // the client has gone
+            }
+        }
+    }
+
+    /**
+     * Method: run - runs a queued request on a pooled context, streaming its output back
+     * @param connection - the client's connection, closed when the script ends
+     * @param out - stream over the connection
+     * @param program - the compiled script
+     * @param input - what the script reads
+     * @param compiling - nanoseconds it took to read and compile the request
+     * @param queued - System.nanoTime() when the request was queued
+     */
+    private void run(SocketChannel connection, DataOutputStream out, ScriptProgram program, String input,
+                     long compiling, long queued) {
+        long started = System.nanoTime();
+        ScriptContext context = contexts.poll();
+        if (context == null) context = new ScriptContext(new Scanner(""), NO_OUTPUT); // only if a worker leaked one
+        FramedOutput framed = new FramedOutput(out, context);
+        PrintStream output = new PrintStream(framed, false, StandardCharsets.UTF_8);
+        boolean failed = false;
+        String error = null;
+        try {
+            try {
+                context.reuse(new Scanner(input), output);
+                context.setLimits(0, 0, timeout);
+                context.setMemoryLimits(0, 0, maxMemory);
+                program.execute(context);
+            } catch (Exception e) {
+                failed = true;
+                error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+            long finished = System.nanoTime();
+            stats.record(compiling, started - queued, finished - started, failed);
+            // the request is finished while it still owns the context, as a failed flush cancels it
+            try (connection) {
+                output.flush();
+                reply(out, failed ? FAILED : SUCCEEDED, failed ? error
+                        : String.format("%.3f ms queued, %.3f ms running", (started - queued) / 1e6, (finished - started) / 1e6));
+            } catch (IOException e) {
+                // the client has gone
+            }
+        } finally {
+            context.reuse(new Scanner(""), NO_OUTPUT); // let go of the request's input and output
+            contexts.offer(context);
+        }
+    }
+
+    /**
+     * Method: compiledFile - compiles a script on the server's disk, reusing the last compile
+     *         while the file has not changed
+     * @param path - path of the script
+     * @return the compiled program
+     * @throws IOException - if the script cannot be read
+     */
+    private ScriptProgram compiledFile(String path) throws IOException {
+        File source = new File(path);
+        long modified = source.lastModified();
+        if (modified == 0) throw new IOException("No such script: " + path);
+        CompiledFile compiled = files.get(path);
+        if (compiled == null || compiled.modified() != modified) {
+            // a .pysc next to the script skips the Tokenizer on the first request too
+            compiled = new CompiledFile(modified, PrecompiledScript.compiledFile(source).exists()
+                    ? PrecompiledScript.loadOrCompile(source)
+                    : ScriptProgram.compile(ScriptRunner.readLines(path)));
+            files.put(path, compiled);
+        }
+        return compiled.program();
+    }
+
+    /**
+     * Method: readText - reads an int length and that many bytes of UTF-8
+     * @param in - the request stream
+     * @return the text
+     * @throws IOException - if the stream ends early or the text is too long
+     */
+    static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_REQUEST_BYTES) {
+            throw new IOException("Request of " + length + " bytes is too large");
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method: writeText - writes an int length and the text in UTF-8
+     * @param out - the stream
+     * @param text - the text
+     * @throws IOException - if the stream cannot be written
+     */
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void reply(DataOutputStream out, byte status, String text) throws IOException {
+        out.writeByte(status);
+        writeText(out, text);
+        out.flush();
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Method: close - stops accepting, lets queued and running scripts finish, then closes the socket
+     * @throws IOException - if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (address instanceof UnixDomainSocketAddress unix) {
+            deleteSocket(unix.getPath());
+        }
+    }
+
+    /**
+     * Method: deleteSocket - deletes a Unix domain socket file, refusing to delete anything else
+     * @param path - path of the socket
+     * @throws IOException - if something that is not a socket is at the path, or it cannot be deleted
+     */
+    private static void deleteSocket(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        boolean socket;
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            socket = (mode & 0170000) == 0140000; // S_IFSOCK
+        } catch (UnsupportedOperationException e) {
+            socket = attributes.isOther();
+        }
+        if (!socket) {
+            throw new IOException(path + " is not a socket, not deleting it");
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * class: FramedOutput
+     * What a script prints, buffered and sent to the client in 'O' frames. If the
+     * client hangs up, the run is cancelled instead of carrying on for no one.
+     */
+    private static class FramedOutput extends OutputStream {
+        private final DataOutputStream out;
+        private final ScriptContext context;
+        private final byte[] buffer = new byte[8192];
+        private int count = 0;
+
+        FramedOutput(DataOutputStream out, ScriptContext context) {
+            this.out = out;
+            this.context = context;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) flush();
+                int chunk = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, chunk);
+                count += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count == 0) return;
+            try {
+                out.writeByte(OUTPUT);
+                out.writeInt(count);
+                out.write(buffer, 0, count);
+                out.flush();
+            } catch (IOException e) {
+                context.cancel();
+                throw e;
+            } finally {
+                count = 0;
+            }
+        }
+    }
+
+    /**
+     * class: Stats
+     * Counts of the requests served, and how long the latest ones spent compiling,
+     * queued and running, for percentiles. Safe to use from several threads.
+     */
+    public static class Stats {
+        private static final int KEPT = 4096; // latest requests percentiles are taken over
+        private final long[] compileNanos = new long[KEPT];
+        private final long[] queuedNanos = new long[KEPT];
+        private final long[] runNanos = new long[KEPT];
+        private long requests = 0;
+        private long failed = 0;
+        private long rejected = 0;
+
+        synchronized void record(long compiling, long queued, long run, boolean failed) {
+            int i = (int) (requests++ % KEPT);
+            compileNanos[i] = compiling;
+            queuedNanos[i] = queued;
+            runNanos[i] = run;
+            if (failed) this.failed++;
+        }
+
+        synchronized void rejected() {
+            rejected++;
+        }
+
+        public synchronized long getRequests() {
+            return requests;
+        }
+
+        public synchronized long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public synchronized String toString() {
+            int kept = (int) Math.min(requests, KEPT);
+            long[] total = new long[kept];
+            for (int i = 0; i < kept; i++) total[i] = compileNanos[i] + queuedNanos[i] + runNanos[i];
+            return String.format("requests=%d failed=%d rejected=%d%n", requests, failed, rejected)
+                    + line("compiling", Arrays.copyOf(compileNanos, kept))
+                    + line("queued", Arrays.copyOf(queuedNanos, kept))
+                    + line("running", Arrays.copyOf(runNanos, kept))
+                    + line("total", total);
+        }
+
+        private static String line(String name, long[] nanos) {
+            if (nanos.length == 0) return name + ": no requests\n";
+            Arrays.sort(nanos);
+            return String.format("%s: p50=%.3f ms p90=%.3f ms p99=%.3f ms max=%.3f ms%n", name,
+                    percentile(nanos, 0.50) / 1e6, percentile(nanos, 0.90) / 1e6,
+                    percentile(nanos, 0.99) / 1e6, nanos[nanos.length - 1] / 1e6);
+        }
+
+        private static long percentile(long[] sorted, double fraction) {
+            return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+        }
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * class: ScriptTerminatedException
+ * Thrown when a running script is stopped from outside its own code, either
+ * because it went over one of the limits set on its ScriptContext or because
+ * the host cancelled it. It is not an IllegalArgumentException so the
+ * grammar's error handling passes it through untouched.
+ */
+public class ScriptTerminatedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ScriptTerminatedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+/**
+ * class: StreamingRunner
+ * Runs a PyScript program while it is still being read, from a pipe, a
+ * socket or any other Reader. Each line is tokenized and handed to the
+ * grammar as soon as it arrives, so top level statements run before the
+ * rest of the program exists and only the block that is currently open
+ * is held in memory. A closing bracket with no match, or a parenthesis
+ * left open at the end of a line, is reported on the line it happens;
+ * braces still open when the input ends are reported at the end.
+ *
+ * Usage: some-generator | java StreamingRunner [--input file]
+ * The program is read from stdin, so the input it reads with iInput,
+ * sInput and bInput comes from the --input file.
+ */
+public class StreamingRunner {
+
+    public static void main(String[] args) throws IOException, ParseException {
+        String inputPath = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--input")) inputPath = args[++i];
+        }
+        Scanner input = (inputPath == null) ? new Scanner("") : new Scanner(new FileReader(inputPath));
+        ScriptContext context = new ScriptContext(input, System.out);
+        run(new InputStreamReader(System.in), context);
+    }
+
+    /**
+     * Method: run - reads, checks and runs a program one line at a time
+     * @param source - where the lines of the program come from
+     * @param context - the input and output the program uses
+     * @throws IOException - if reading the source fails
+     * @throws ParseException - if a line does not follow the grammar
+     */
+    public static void run(Reader source, ScriptContext context) throws IOException, ParseException {
+        BufferedReader reader = (source instanceof BufferedReader buffered) ? buffered : new BufferedReader(source);
+        Tokenizer tokenizer = new Tokenizer();
+        Grammar2 grammar = new Grammar2(context);
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                ArrayList<Tokenizer.Token> tokens = tokenizer.tokenize(line);
+                tokenizer.endLine(line);
+                grammar.addTokens(tokens);
+                grammar.parse();
+                context.getOutput().flush(); // output keeps up with the input
+            }
+            tokenizer.checkUnclosed();
+            context.joinTasks();
+        } catch (RuntimeException | ParseException e) {
+            context.attachTrace(e);
+            throw e;
+        }
+    }
+}
@@ -15,13 +15,10 @@ import java.util.Scanner;
 public class TestGrammar2 {
 
     public static void main(String[] args) throws ParseException{
-        Tokenizer tokenizer = new Tokenizer();
         Scanner scanner = new Scanner(System.in);
         System.out.println("Enter PyScript file name:");
         String file = scanner.nextLine();
         String filePath = "./src/"+file; // File path
-        ArrayList<Tokenizer.Token> tokens;
-        Grammar2 grammar = new Grammar2();
         List<String> lines = new ArrayList<>();
 
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
@@ -34,14 +31,8 @@ public class TestGrammar2 {
             System.err.println("Error reading the file: " + e.getMessage());
         }
 
-        // check the brackets, error check before running
-        tokenizer.checkBrackets(lines);
-
-        // begin parsing process once error checking has passed
-        for (String line: lines){
-            tokens = tokenizer.tokenize(line);
-            grammar.addTokens(tokens);
-            grammar.parse();
-        }
+        // check the brackets and tokenize every line once, numbering the lines as it goes,
+        // then begin parsing process once error checking has passed
+        ScriptProgram.compile(lines).execute(new ScriptContext(scanner, System.out));
     }
 }
\ No newline at end of file
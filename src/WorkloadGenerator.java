@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * class: WorkloadGenerator
+ * Writes valid PyScript programs of a chosen size and shape, for measuring
+ * the interpreter on programs much bigger than the samples. A program
+ * declares all of its variables up front and then runs a random mix of
+ * int, bool and string assignments, @ chains, prints, if-elif-else chains
+ * and while loops. Blocks nest down to the chosen depth at least once.
+ * The same settings and seed always give the same program.
+ *
+ * Every program runs to the end without reading input. Each while loop
+ * has a counter of its own that nothing else assigns, so loops always end.
+ * A string variable is only ever assigned literals, and @ chains are stored
+ * in a separate variable, so strings do not grow as the loops run.
+ *
+ * Usage: java WorkloadGenerator [-l lines] [-d depth] [-v variables] [-c chain] [-n loops] [-s seed]
+ */
+public class WorkloadGenerator {
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "eps", "zeta", "eta", "theta"};
+    private final int lineCount;
+    private final int maxDepth;
+    private final int variableCount;
+    private final int chainLength;
+    private final int loopCount;
+    private final long seed;
+    private Random random;
+    private List<String> lines;
+    private int deepest;
+
+    /**
+     * Constructor: sets the shape of the programs to generate
+     * @param lineCount - about how many lines long a program is
+     * @param maxDepth - how deeply blocks nest
+     * @param variableCount - how many int, bool and string variables are declared, in total
+     * @param chainLength - how many values each @ chain joins
+     * @param loopCount - how many times each while loop runs
+     * @param seed - seed of the random choices
+     */
+    public WorkloadGenerator(int lineCount, int maxDepth, int variableCount, int chainLength, int loopCount, long seed) {
+        if (variableCount < 3) {
+            throw new IllegalArgumentException("A workload needs at least 3 variables: " + variableCount);
+        }
+        if (chainLength < 1 || loopCount < 0 || maxDepth < 0) {
+            throw new IllegalArgumentException("Chain length must be positive, loop count and depth not negative");
+        }
+        this.lineCount = lineCount;
+        this.maxDepth = maxDepth;
+        this.variableCount = variableCount;
+        this.chainLength = chainLength;
+        this.loopCount = loopCount;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) {
+        int lineCount = 1000, maxDepth = 4, variableCount = 30, chainLength = 5, loopCount = 2;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-l" -> lineCount = Integer.parseInt(args[++i]);
+                case "-d" -> maxDepth = Integer.parseInt(args[++i]);
+                case "-v" -> variableCount = Integer.parseInt(args[++i]);
+                case "-c" -> chainLength = Integer.parseInt(args[++i]);
+                case "-n" -> loopCount = Integer.parseInt(args[++i]);
+                case "-s" -> seed = Long.parseLong(args[++i]);
+                default -> {
+                    System.err.println("Usage: java WorkloadGenerator [-l lines] [-d depth] [-v variables]"
+                            + " [-c chain] [-n loops] [-s seed]");
+                    System.exit(2);
+                }
+            }
+        }
+        for (String line : new WorkloadGenerator(lineCount, maxDepth, variableCount, chainLength, loopCount, seed)
+                .generate()) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Method: generate - writes a program
+     * @return lines - the program
+     */
+    public List<String> generate() {
+        random = new Random(seed);
+        lines = new ArrayList<>();
+        deepest = 0;
+        // a third of the variables of each type, the ints get what is left over
+        for (int i = 0; i < ints(); i++) lines.add("let v" + i + " = " + random.nextInt(1000));
+        for (int i = 0; i < strings(); i++) lines.add("let s" + i + " = \"" + word() + "\"");
+        for (int i = 0; i < bools(); i++) lines.add("let b" + i + " = " + (random.nextBoolean() ? "True" : "False"));
+        lines.add("let joined = \"\"");
+        for (int depth = 0; depth < maxDepth; depth++) lines.add("let w" + depth + " = 0");
+        while (lines.size() < lineCount || deepest < maxDepth) {
+            statement(0);
+        }
+        lines.add("puts(v0)");
+        lines.add("puts(joined)");
+        return lines;
+    }
+
+    /**
+     * Method: statement - writes one statement, or a block and everything in it
+     * @param depth - how many blocks the statement is inside of
+     */
+    private void statement(int depth) {
+        // keep going deeper until the deepest nesting has been reached once
+        boolean mustNest = deepest < maxDepth && depth == deepest;
+        if (depth < maxDepth && (mustNest || random.nextInt(10) < 2)) {
+            if (random.nextBoolean()) ifChain(depth);
+            else whileLoop(depth);
+            return;
+        }
+        String indent = "    ".repeat(depth);
+        switch (random.nextInt(10)) {
+            case 0, 1, 2, 3 -> lines.add(indent + "v" + random.nextInt(ints()) + " = " + numExpression());
+            case 4, 5 -> lines.add(indent + "b" + random.nextInt(bools()) + " = " + boolExpression());
+            case 6 -> lines.add(indent + "s" + random.nextInt(strings()) + " = \"" + word() + "\"");
+            case 7, 8 -> lines.add(indent + "joined = " + chain());
+            default -> lines.add(indent + "puts(v" + random.nextInt(ints()) + ")");
+        }
+    }
+
+    /**
+     * Method: ifChain - writes an if block with an optional elif and else, each holding a few statements
+     * @param depth - how many blocks the chain is inside of
+     */
+    private void ifChain(int depth) {
+        String indent = "    ".repeat(depth);
+        lines.add(indent + "if (" + boolExpression() + ") {");
+        body(depth + 1);
+        lines.add(indent + "}");
+        if (random.nextBoolean()) {
+            lines.add(indent + "elif (" + boolExpression() + ") {");
+            body(depth + 1);
+            lines.add(indent + "}");
+        }
+        if (random.nextBoolean()) {
+            lines.add(indent + "else {");
+            body(depth + 1);
+            lines.add(indent + "}");
+        }
+    }
+
+    /**
+     * Method: whileLoop - writes a while loop that runs loopCount times, using the counter of its depth
+     * @param depth - how many blocks the loop is inside of
+     */
+    private void whileLoop(int depth) {
+        String indent = "    ".repeat(depth);
+        String counter = "w" + depth;
+        lines.add(indent + counter + " = 0");
+        lines.add(indent + "while (" + counter + " < " + loopCount + ") {");
+        body(depth + 1);
+        lines.add(indent + "    " + counter + " = " + counter + " + 1");
+        lines.add(indent + "}");
+    }
+
+    /**
+     * Method: body - writes the statements of a block, nesting further only when it is needed to
+     *         reach the deepest level
+     * @param depth - how many blocks the statements are inside of
+     */
+    private void body(int depth) {
+        deepest = Math.max(deepest, depth);
+        int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            statement(depth);
+        }
+    }
+
+    /**
+     * Method: numExpression
+     * @return an int expression of variables and literals that cannot divide by zero
+     */
+    private String numExpression() {
+        String left = "v" + random.nextInt(ints());
+        return switch (random.nextInt(4)) {
+            case 0 -> "(" + left + " + " + random.nextInt(100) + ") % 1000";
+            case 1 -> "(" + left + " * " + (2 + random.nextInt(8)) + ") % 1000";
+            case 2 -> left + " - v" + random.nextInt(ints());
+            default -> "(" + left + " + v" + random.nextInt(ints()) + ") % " + (1 + random.nextInt(999));
+        };
+    }
+
+    /**
+     * Method: boolExpression
+     * @return a comparison, optionally joined to a bool variable with and/or
+     */
+    private String boolExpression() {
+        String comparison = "v" + random.nextInt(ints()) + " " + new String[]{"<", ">", "<=", ">=", "==", "!="}[random.nextInt(6)]
+                + " " + random.nextInt(1000);
+        return switch (random.nextInt(3)) {
+            case 0 -> comparison;
+            case 1 -> comparison + " and b" + random.nextInt(bools());
+            default -> comparison + " or b" + random.nextInt(bools());
+        };
+    }
+
+    /**
+     * Method: chain
+     * @return an @ chain of chainLength string literals and string variables
+     */
+    private String chain() {
+        StringBuilder chain = new StringBuilder();
+        for (int i = 0; i < chainLength; i++) {
+            if (i > 0) chain.append(" @ ");
+            if (random.nextBoolean()) chain.append("s").append(random.nextInt(strings()));
+            else chain.append('"').append(word()).append('"');
+        }
+        return chain.toString();
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private int strings() {
+        return variableCount / 3;
+    }
+
+    private int bools() {
+        return variableCount / 3;
+    }
+
+    private int ints() {
+        return variableCount - strings() - bools();
+    }
+}